@@ -0,0 +1,148 @@
+package com.outprogram.ui;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+
+// 后台渲染线程：在两块缓冲之间交替绘制画面快照，EDT 只负责贴上最近完成的一帧
+// 待绘制的请求只保留最新的一个，渲染跟不上时中间状态直接丢弃，不会排队
+final class BackgroundRenderer {
+    // 一帧的绘制参数；绘制完成后 image 才被赋值
+    static final class Frame {
+        final Scene scene;
+        final Color background;
+        final int zoomLevel;
+        final int viewX, viewY;
+        final int width, height;
+        final boolean reduced;
+        final boolean antialias;
+        // 画面对应的可编辑仓库及当时的图形数，EDT 据此补画这一帧之后新增的图形
+        final ShapeStore source;
+        final int shapes;
+        BufferedImage image;
+
+        Frame(Scene scene, Color background, int zoomLevel, int viewX, int viewY, int width, int height,
+              boolean reduced, boolean antialias, ShapeStore source, int shapes) {
+            this.scene = scene;
+            this.background = background;
+            this.zoomLevel = zoomLevel;
+            this.viewX = viewX;
+            this.viewY = viewY;
+            this.width = width;
+            this.height = height;
+            this.reduced = reduced;
+            this.antialias = antialias;
+            this.source = source;
+            this.shapes = shapes;
+        }
+    }
+
+    private final Object lock = new Object();
+    private final GraphicsConfiguration gc;
+    private final Runnable onFrame;
+    private final Thread thread;
+    private Frame pending;
+    private Frame front;
+    // 不在显示中的那块缓冲，下一帧画在它上面
+    private BufferedImage spare;
+    private boolean running = true;
+
+    BackgroundRenderer(GraphicsConfiguration gc, Runnable onFrame) {
+        this.gc = gc;
+        this.onFrame = onFrame;
+        thread = new Thread(this::run, "DrawingPanel-render");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // 提交新的绘制请求，覆盖尚未开始的旧请求
+    void submit(Frame frame) {
+        synchronized (lock) {
+            pending = frame;
+            lock.notifyAll();
+        }
+    }
+
+    void shutdown() {
+        synchronized (lock) {
+            running = false;
+            pending = null;
+            lock.notifyAll();
+        }
+    }
+
+    // 在 EDT 上调用：按当前视图贴上最近完成的一帧，视图变化时先平移缩放旧画面；还没有画面时返回 null
+    // 贴图期间持有锁，后台线程不会在这时把这块缓冲拿去画下一帧
+    Frame paintFront(Graphics2D g2d, int zoomLevel, int viewX, int viewY) {
+        synchronized (lock) {
+            if (front == null) return null;
+            if (front.zoomLevel == zoomLevel) {
+                g2d.drawImage(front.image, front.viewX - viewX, front.viewY - viewY, null);
+            } else {
+                double k = TileCache.scale(zoomLevel) / TileCache.scale(front.zoomLevel);
+                AffineTransform at = AffineTransform.getTranslateInstance(front.viewX * k - viewX, front.viewY * k - viewY);
+                at.scale(k, k);
+                g2d.drawImage(front.image, at, null);
+            }
+            return front;
+        }
+    }
+
+    private void run() {
+        while (true) {
+            Frame frame;
+            BufferedImage target;
+            synchronized (lock) {
+                while (running && pending == null) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (!running) return;
+                frame = pending;
+                pending = null;
+                target = spare;
+                spare = null;
+            }
+
+            if (target == null || target.getWidth() != frame.width || target.getHeight() != frame.height) {
+                target = gc != null
+                        ? gc.createCompatibleImage(frame.width, frame.height, Transparency.OPAQUE)
+                        : new BufferedImage(frame.width, frame.height, BufferedImage.TYPE_INT_RGB);
+            }
+            render(frame, target);
+            RenderMetrics metrics = RenderMetrics.get();
+            if (metrics.isEnabled()) {
+                metrics.backgroundFrameRendered();
+            }
+
+            synchronized (lock) {
+                if (front != null) spare = front.image;
+                frame.image = target;
+                front = frame;
+            }
+            onFrame.run();
+        }
+    }
+
+    // 在调用线程上把 frame 画到 target，基准测试也直接调用
+    static void render(Frame frame, BufferedImage target) {
+        Graphics2D g2d = target.createGraphics();
+        g2d.setColor(frame.background);
+        g2d.fillRect(0, 0, frame.width, frame.height);
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                frame.antialias ? RenderingHints.VALUE_ANTIALIAS_ON : RenderingHints.VALUE_ANTIALIAS_OFF);
+        g2d.setClip(0, 0, frame.width, frame.height);
+        g2d.translate(-frame.viewX, -frame.viewY);
+        double scale = TileCache.scale(frame.zoomLevel);
+        g2d.scale(scale, scale);
+        frame.scene.paint(g2d, frame.reduced);
+        g2d.dispose();
+    }
+}
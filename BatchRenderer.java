@@ -0,0 +1,156 @@
+package com.outprogram.ui;
+
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+
+// 无界面批量渲染：把一批 .drw 文档渲染成 PNG 缩略图，不创建任何 Swing 组件
+// 用法：java -Djava.awt.headless=true com.outprogram.ui.BatchRenderer [-o 输出目录] [-s 宽x高] [-j 线程数] [-z 压缩级别] 文件或目录...
+public class BatchRenderer {
+    private final File outputDir;
+    private final int maxWidth;
+    private final int maxHeight;
+    private final int threads;
+    private final int level;
+
+    private final AtomicInteger rendered = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final AtomicLong shapes = new AtomicLong();
+
+    BatchRenderer(File outputDir, int maxWidth, int maxHeight, int threads, int level) {
+        this.outputDir = outputDir;
+        this.maxWidth = maxWidth;
+        this.maxHeight = maxHeight;
+        this.threads = threads;
+        this.level = level;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        System.setProperty("java.awt.headless", "true");
+        File outputDir = new File(".");
+        int width = 256;
+        int height = 256;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int level = Deflater.DEFAULT_COMPRESSION;
+        List<File> inputs = new ArrayList<>();
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "-o":
+                        outputDir = new File(args[++i]);
+                        break;
+                    case "-s":
+                        String[] size = args[++i].toLowerCase(Locale.ROOT).split("x");
+                        width = Integer.parseInt(size[0]);
+                        height = Integer.parseInt(size[size.length - 1]);
+                        break;
+                    case "-j":
+                        threads = Integer.parseInt(args[++i]);
+                        break;
+                    case "-z":
+                        level = Integer.parseInt(args[++i]);
+                        break;
+                    default:
+                        addInputs(new File(args[i]), inputs);
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            inputs.clear();
+        }
+        if (inputs.isEmpty() || width <= 0 || height <= 0 || threads <= 0 || level < -1 || level > 9) {
+            System.err.println("用法: BatchRenderer [-o 输出目录] [-s 宽x高] [-j 线程数] [-z 压缩级别] 文件或目录...");
+            System.exit(2);
+        }
+        if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+            System.err.println("无法创建输出目录: " + outputDir);
+            System.exit(2);
+        }
+
+        BatchRenderer renderer = new BatchRenderer(outputDir, width, height, threads, level);
+        System.exit(renderer.renderAll(inputs) ? 0 : 1);
+    }
+
+    private static void addInputs(File input, List<File> inputs) {
+        if (!input.isDirectory()) {
+            inputs.add(input);
+            return;
+        }
+        File[] files = input.listFiles((dir, name) -> name.endsWith(VectorFormat.EXTENSION));
+        if (files != null) {
+            Arrays.sort(files);
+            inputs.addAll(Arrays.asList(files));
+        }
+    }
+
+    // 按文档并行；队列有界，提交过快时由提交线程自己渲染，内存占用与文档总数无关
+    boolean renderAll(List<File> inputs) throws InterruptedException {
+        ForkJoinPool stripPool = new ForkJoinPool(threads);
+        TiledExporter exporter = new TiledExporter(stripPool);
+        // 缩略图缩小倍数大，细小图形和多边形细节按像素简化，画面基本不变
+        exporter.setReducedDetail(true);
+        exporter.setCompressionLevel(level);
+        ThreadPoolExecutor workers = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(threads * 2), new ThreadPoolExecutor.CallerRunsPolicy());
+
+        long start = System.nanoTime();
+        for (File input : inputs) {
+            workers.execute(() -> render(exporter, input));
+        }
+        workers.shutdown();
+        workers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        stripPool.shutdown();
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf(Locale.ROOT, "%d rendered, %d failed, %d shapes in %.2f s: %.1f docs/s, %.0f shapes/s (%d threads)%n",
+                rendered.get(), failed.get(), shapes.get(), seconds,
+                rendered.get() / seconds, shapes.get() / seconds, threads);
+        return failed.get() == 0;
+    }
+
+    private void render(TiledExporter exporter, File input) {
+        try {
+            Scene scene = open(input);
+            // 文档没有记录画布大小，以原点到图形右下角为画布，等比缩小到限定尺寸内
+            Rectangle bounds = scene.getBounds();
+            int srcWidth = bounds == null ? 1 : Math.max(1, bounds.x + bounds.width + ShapeRenderer.PAINT_SLACK);
+            int srcHeight = bounds == null ? 1 : Math.max(1, bounds.y + bounds.height + ShapeRenderer.PAINT_SLACK);
+            double scale = Math.min(1.0, Math.min((double) maxWidth / srcWidth, (double) maxHeight / srcHeight));
+            int width = Math.max(1, (int) Math.round(srcWidth * scale));
+            int height = Math.max(1, (int) Math.round(srcHeight * scale));
+
+            exporter.export(scene, Color.WHITE, srcWidth, srcHeight, width, height, outputFile(input));
+            shapes.addAndGet(scene.size());
+            rendered.incrementAndGet();
+        } catch (IOException | RuntimeException e) {
+            failed.incrementAndGet();
+            System.err.println(input + ": " + e);
+        }
+    }
+
+    private static Scene open(File input) throws IOException {
+        MappedDocument mapped = MappedDocument.open(input);
+        if (mapped != null) return new Scene(mapped, new ShapeStore(0));
+        return new Scene(null, VectorFormat.read(input));
+    }
+
+    private File outputFile(File input) {
+        String name = input.getName();
+        if (name.endsWith(VectorFormat.EXTENSION)) {
+            name = name.substring(0, name.length() - VectorFormat.EXTENSION.length());
+        }
+        return new File(outputDir, name + ".png");
+    }
+}
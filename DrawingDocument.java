@@ -0,0 +1,182 @@
+package com.outprogram.ui;
+
+import java.awt.Rectangle;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// 文档模型：打开的映射文档（只读底层）加上其后绘制的图形，与界面无关
+// 只在一个线程上修改（DrawingPanel 里是 EDT）；snapshot() 可在任意线程调用，返回以后不会再变的画面
+// 快照与仓库共用数组，取快照是 O(1)，修改方继续追加也不会影响已取出的快照
+final class DrawingDocument {
+    // 修改之后在修改线程上同步通知，id 都是 shapes() 中的下标
+    interface Listener {
+        // 末尾新增了 [from, to) 的图形
+        void shapesAdded(DrawingDocument document, int from, int to);
+
+        // 末尾 [from, to) 的图形被移除，bounds 为它们的包围盒
+        void shapesRemoved(DrawingDocument document, int from, int to, Rectangle bounds);
+
+        // 内容整体换掉：清空、撤销清空、打开文档
+        void contentReplaced(DrawingDocument document);
+    }
+
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    // 其他线程只通过 snapshot() 读取，这两个字段 volatile 只是为了估算内存
+    private volatile ShapeStore shapes;
+    private volatile MappedDocument base;
+    // 最近一次取出的快照，内容改变后置为 null，下次取时再建
+    private volatile Scene published;
+    private volatile long version;
+
+    DrawingDocument() {
+        shapes = new ShapeStore();
+    }
+
+    void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    // 以下读取方法只在修改线程上调用
+    ShapeStore shapes() {
+        return shapes;
+    }
+
+    MappedDocument base() {
+        return base;
+    }
+
+    // 当前内容本身，不是快照，只能在修改线程上同步使用
+    Scene current() {
+        return new Scene(base, shapes);
+    }
+
+    int size() {
+        MappedDocument b = base;
+        return (b == null ? 0 : b.size()) + shapes.size();
+    }
+
+    boolean isEmpty() {
+        return base == null && shapes.isEmpty();
+    }
+
+    // 每次修改加一
+    long version() {
+        return version;
+    }
+
+    // 任意线程可调用；内容没变时返回同一个对象
+    Scene snapshot() {
+        Scene scene = published;
+        if (scene != null) return scene;
+        synchronized (this) {
+            if (published == null) published = new Scene(base, shapes.snapshot());
+            return published;
+        }
+    }
+
+    int add(byte type, int x1, int y1, int x2, int y2, boolean filled) {
+        int id;
+        synchronized (this) {
+            id = shapes.add(type, x1, y1, x2, y2, filled);
+            changed();
+        }
+        fireAdded(id, id + 1);
+        return id;
+    }
+
+    int addVertices(byte type, int[] xs, int[] ys, int n, boolean filled) {
+        int id;
+        synchronized (this) {
+            id = shapes.addVertices(type, xs, ys, n, filled);
+            changed();
+        }
+        fireAdded(id, id + 1);
+        return id;
+    }
+
+    int add(ShapeRecord record) {
+        int id;
+        synchronized (this) {
+            id = shapes.add(record);
+            changed();
+        }
+        fireAdded(id, id + 1);
+        return id;
+    }
+
+    // 追加 source 中的全部图形
+    void addAll(ShapeStore source) {
+        if (source.isEmpty()) return;
+        int from;
+        synchronized (this) {
+            from = shapes.size();
+            shapes.addRange(source, 0, source.size());
+            changed();
+        }
+        fireAdded(from, from + source.size());
+    }
+
+    // 移除最后一个图形并返回它
+    ShapeRecord removeLast() {
+        int id = shapes.size() - 1;
+        ShapeRecord removed = shapes.get(id);
+        Rectangle bounds = shapes.getBounds(id);
+        synchronized (this) {
+            shapes.removeLast();
+            changed();
+        }
+        fireRemoved(id, id + 1, bounds);
+        return removed;
+    }
+
+    // 移除 [from, size) 的图形，返回它们的副本
+    ShapeStore removeFrom(int from) {
+        int to = shapes.size();
+        ShapeStore removed = shapes.copyTail(from);
+        synchronized (this) {
+            shapes.truncate(from);
+            changed();
+        }
+        fireRemoved(from, to, removed.getBounds());
+        return removed;
+    }
+
+    // 换上新内容；旧的仓库不再被修改，调用方可以留着它（撤销清空）
+    void replace(ShapeStore newShapes, MappedDocument newBase) {
+        synchronized (this) {
+            shapes = newShapes;
+            base = newBase;
+            changed();
+        }
+        for (Listener listener : listeners) {
+            listener.contentReplaced(this);
+        }
+    }
+
+    // 可能在 JMX 线程上调用，只是估算
+    long footprintBytes() {
+        MappedDocument b = base;
+        return shapes.footprintBytes() + (b == null ? 0 : b.footprintBytes());
+    }
+
+    private void changed() {
+        published = null;
+        version++;
+    }
+
+    private void fireAdded(int from, int to) {
+        for (Listener listener : listeners) {
+            listener.shapesAdded(this, from, to);
+        }
+    }
+
+    private void fireRemoved(int from, int to, Rectangle bounds) {
+        for (Listener listener : listeners) {
+            listener.shapesRemoved(this, from, to, bounds);
+        }
+    }
+}
@@ -1,232 +1,1047 @@
-package com.outprogram.ui;  
-
-
-import java.awt.*;
-import java.awt.event.*;
-import java.awt.image.BufferedImage;
-import java.io.File;
-import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
-import javax.imageio.ImageIO;
-import javax.swing.JPanel;
-
-public class DrawingPanel extends JPanel implements MouseListener, MouseMotionListener {
-    private String drawType = "line";
-    private boolean isFilled = false;
-    private int startX, startY, endX, endY;
-    private List<Point> tempPolygonPoints = new ArrayList<>();
-    private List<ShapeRecord> history = new ArrayList<>();
-    private boolean dragging = false;
-
-    public DrawingPanel() {
-        setBackground(Color.WHITE);
-        addMouseListener(this);
-        addMouseMotionListener(this);
-    }
-
-    public void setDrawType(String type) {
-        this.drawType = type;
-        if ("polygon".equals(type)) {
-            tempPolygonPoints.clear();
-        }
-        repaint();
-    }
-
-    public void setFilled(boolean filled) {
-        this.isFilled = filled;
-        repaint();
-    }
-
-    public void clearAll() {
-        history.clear();
-        tempPolygonPoints.clear();
-        repaint();
-    }
-
-    public void undo() {
-        if (!history.isEmpty()) {
-            history.remove(history.size() - 1);
-            repaint();
-        }
-    }
-
-    public boolean canUndo() {
-        return !history.isEmpty();
-    }
-
-    public boolean saveImage(File file) {
-        int w = getWidth();
-        int h = getHeight();
-        if (w <= 0 || h <= 0) return false;
-
-        BufferedImage image = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
-        Graphics2D g2d = image.createGraphics();
-        g2d.setColor(getBackground());
-        g2d.fillRect(0, 0, w, h);
-        paintHistory(g2d);
-        g2d.dispose();
-
-        try {
-            return ImageIO.write(image, "png", file);
-        } catch (IOException e) {
-            e.printStackTrace();
-            return false;
-        }
-    }
-
-    private void paintHistory(Graphics2D g2d) {
-        for (ShapeRecord record : history) {
-            switch (record.type) {
-                case "line":
-                    g2d.setColor(Color.BLUE);
-                    g2d.drawLine(record.x1, record.y1, record.x2, record.y2);
-                    break;
-                case "rect":
-                    g2d.setColor(Color.GREEN);
-                    int rx = Math.min(record.x1, record.x2);
-                    int ry = Math.min(record.y1, record.y2);
-                    int rw = Math.abs(record.x2 - record.x1);
-                    int rh = Math.abs(record.y2 - record.y1);
-                    if (record.filled) g2d.fillRect(rx, ry, rw, rh);
-                    else g2d.drawRect(rx, ry, rw, rh);
-                    break;
-                case "oval":
-                    g2d.setColor(Color.RED);
-                    int ox = Math.min(record.x1, record.x2);
-                    int oy = Math.min(record.y1, record.y2);
-                    int ow = Math.abs(record.x2 - record.x1);
-                    int oh = Math.abs(record.y2 - record.y1);
-                    if (record.filled) g2d.fillOval(ox, oy, ow, oh);
-                    else g2d.drawOval(ox, oy, ow, oh);
-                    break;
-                case "polygon":
-                    if (record.points != null && record.points.size() >= 3) { // ✅ 至少3点
-                        g2d.setColor(Color.MAGENTA);
-                        int n = record.points.size();
-                        int[] xArr = new int[n];
-                        int[] yArr = new int[n];
-                        for (int i = 0; i < n; i++) {
-                            Point p = record.points.get(i);
-                            xArr[i] = p.x;
-                            yArr[i] = p.y;
-                        }
-                        if (record.filled) g2d.fillPolygon(xArr, yArr, n);
-                        else g2d.drawPolygon(xArr, yArr, n);
-                    }
-                    break;
-            }
-        }
-    }
-
-    @Override
-    protected void paintComponent(Graphics g) {
-        super.paintComponent(g);
-        Graphics2D g2d = (Graphics2D) g;
-        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-
-        paintHistory(g2d);
-
-        // 绘制正在拖拽的图形（非多边形）
-        if (dragging && !"polygon".equals(drawType)) {
-            g2d.setColor(Color.GRAY);
-            switch (drawType) {
-                case "line":
-                    g2d.drawLine(startX, startY, endX, endY);
-                    break;
-                case "rect":
-                    int rx = Math.min(startX, endX);
-                    int ry = Math.min(startY, endY);
-                    int rw = Math.abs(endX - startX);
-                    int rh = Math.abs(endY - startY);
-                    if (isFilled) g2d.fillRect(rx, ry, rw, rh);
-                    else g2d.drawRect(rx, ry, rw, rh);
-                    break;
-                case "oval":
-                    int ox = Math.min(startX, endX);
-                    int oy = Math.min(startY, endY);
-                    int ow = Math.abs(endX - startX);
-                    int oh = Math.abs(endY - startY);
-                    if (isFilled) g2d.fillOval(ox, oy, ow, oh);
-                    else g2d.drawOval(ox, oy, ow, oh);
-                    break;
-            }
-        }
-
-        // 实时预览多边形（临时线）
-        if ("polygon".equals(drawType)) {
-            g2d.setColor(Color.MAGENTA);
-            // 已点击的点之间连线
-            if (tempPolygonPoints.size() >= 2) {
-                for (int i = 0; i < tempPolygonPoints.size() - 1; i++) {
-                    Point p1 = tempPolygonPoints.get(i);
-                    Point p2 = tempPolygonPoints.get(i + 1);
-                    g2d.drawLine(p1.x, p1.y, p2.x, p2.y);
-                }
-            }
-            // 最后一个点连到鼠标当前位置
-            if (!tempPolygonPoints.isEmpty()) {
-                Point last = tempPolygonPoints.get(tempPolygonPoints.size() - 1);
-                g2d.drawLine(last.x, last.y, endX, endY);
-            }
-        }
-    }
-
-    @Override
-    public void mousePressed(MouseEvent e) {
-        startX = e.getX();
-        startY = e.getY();
-        dragging = true;
-        if ("polygon".equals(drawType)) {
-            // ✅ 修复：添加当前鼠标位置作为顶点
-            tempPolygonPoints.add(new Point());
-        }
-    }
-
-    @Override
-    public void mouseDragged(MouseEvent e) {
-        endX = e.getX();
-        endY = e.getY();
-        repaint();
-    }
-
-    @Override
-    public void mouseReleased(MouseEvent e) {
-        endX = e.getX();
-        endY = e.getY();
-        dragging = false;
-        // 非多边形图形直接保存
-        if (!"polygon".equals(drawType)) {
-            history.add(new ShapeRecord(drawType, startX, startY, endX, endY, isFilled));
-            repaint();
-        }
-        // 多边形不在此处保存（由 mouseClicked 双击完成）
-    }
-
-    @Override
-    public void mouseClicked(MouseEvent e) {
-        // ✅ 双击完成多边形
-        if ("polygon".equals(drawType) && e.getClickCount() == 2) {
-            if (tempPolygonPoints.size() >= 3) {
-                history.add(new ShapeRecord("polygon", new ArrayList<>(tempPolygonPoints), isFilled));
-            }
-            tempPolygonPoints.clear();
-            repaint();
-        }
-    }
-
-    @Override
-    public void mouseEntered(MouseEvent e) {}
-
-    @Override
-    public void mouseExited(MouseEvent e) {}
-
-    @Override
-    public void mouseMoved(MouseEvent e) {
-        endX = e.getX();
-        endY = e.getY();
-        if ("polygon".equals(drawType)) {
-            repaint(); // 实时更新预览线
-        }
-    }
+package com.outprogram.ui;  
+
+
+import java.awt.*;
+import java.awt.event.*;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Line2D;
+import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
+import javax.swing.Timer;
+import javax.swing.undo.AbstractUndoableEdit;
+
+public class DrawingPanel extends JPanel implements MouseListener, MouseMotionListener, MouseWheelListener {
+    // 一帧超过这个时间就降低画质，直到操作停下来
+    private static final long FRAME_BUDGET_NANOS = 33_000_000L;
+    private static final int RESTORE_DELAY_MS = 300;
+    // 菜单放大/缩小一次的级数（每级 2 的 1/4 次方）
+    private static final int MENU_ZOOM_STEPS = 2;
+    private static final Rectangle OVERLAY_BOUNDS = new Rectangle(8, 8, 320, 104);
+    // 批量添加时每批的图形数
+    private static final int BULK_BATCH = 65536;
+
+    private String drawType = "line";
+    private boolean isFilled = false;
+    // 以下坐标都是世界坐标
+    private int startX, startY, endX, endY;
+    private List<Point> tempPolygonPoints = new ArrayList<>();
+    // 正在绘制的手绘笔画，松开鼠标时存为折线
+    private StrokeBuilder stroke;
+    // 已提交的内容；图形的 id 即绘制顺序。瓦片与日志都通过监听器跟随它的变化
+    private final DrawingDocument document = new DrawingDocument();
+    private final IntList queryResult = new IntList();
+    private final EditHistory edits = new EditHistory();
+    // 自动保存日志，为 null 时不记录
+    private Journal journal;
+    private boolean dragging = false;
+    // 已提交图形按瓦片缓存，平移只是贴图；图形增删时只改动相交的瓦片
+    private final TileCache tiles = new TileCache();
+    // 视图：缩放级别，以及视口左上角的设备坐标（世界坐标乘以缩放比例）
+    private int zoomLevel;
+    private int viewX, viewY;
+    // 中键或右键拖动平移视图
+    private boolean panning;
+    private int panX, panY;
+    // 后台渲染模式：画面由渲染线程按快照绘制，EDT 只贴图；为 null 时使用瓦片缓存
+    private BackgroundRenderer renderer;
+    private BackgroundRenderer.Frame requested;
+    private long requestedVersion;
+    // 拖动与移动事件先合并，再按帧率重绘预览
+    private final InputPacer pacer = new InputPacer(InputPacer.displayRefreshRate(), this::paintMotion);
+    // 性能浮层，打开时定时刷新
+    private boolean overlayVisible;
+    private boolean metricsEnabledByOverlay;
+    private final Timer overlayTimer = new Timer(500, e -> repaint(OVERLAY_BOUNDS));
+    // 上一帧预览图形占用的区域（世界坐标）
+    private Rectangle previewBounds;
+    // 用户选择的细节层次模式，同时作用于导出
+    private boolean reducedDetail;
+    private int exportCompressionLevel = Deflater.DEFAULT_COMPRESSION;
+    // 交互过程中出现过慢帧：关闭抗锯齿并按细节层次绘制
+    private boolean degraded;
+    private long lastInteraction;
+    private final Timer restoreTimer = new Timer(RESTORE_DELAY_MS, e -> restoreQuality());
+
+    public DrawingPanel() {
+        setBackground(Color.WHITE);
+        addMouseListener(this);
+        addMouseMotionListener(this);
+        addMouseWheelListener(this);
+        addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentResized(ComponentEvent e) {
+                noteInteraction();
+            }
+        });
+        restoreTimer.setRepeats(false);
+        document.addListener(new ContentListener());
+        RenderMetrics.register();
+        RenderMetrics.get().attach(document::footprintBytes, tiles::getMemoryUsed, pacer);
+    }
+
+    // 文档模型；其他线程只能通过它的 snapshot() 读取
+    DrawingDocument getDocument() {
+        return document;
+    }
+
+    public void setDrawType(String type) {
+        this.drawType = type;
+        if ("polygon".equals(type)) {
+            tempPolygonPoints.clear();
+        }
+        repaint();
+    }
+
+    public void setFilled(boolean filled) {
+        this.isFilled = filled;
+        repaint();
+    }
+
+    // 细节层次模式：不足一个像素的图形画成一个点，多边形简化后再画；导出图片时同样生效
+    public void setReducedDetail(boolean reducedDetail) {
+        this.reducedDetail = reducedDetail;
+        tiles.clear();
+        repaint();
+    }
+
+    public boolean isReducedDetail() {
+        return reducedDetail;
+    }
+
+    // 导出 PNG 的压缩级别：0 最快、文件最大，9 最慢、文件最小
+    public void setExportCompressionLevel(int level) {
+        this.exportCompressionLevel = level;
+    }
+
+    // 以视口中的 (x, y) 为中心缩放 steps 级，正数放大；该点下的世界坐标保持不动
+    public void zoom(int steps, int x, int y) {
+        int level = Math.max(TileCache.MIN_LEVEL, Math.min(TileCache.MAX_LEVEL, zoomLevel + steps));
+        if (level == zoomLevel) return;
+        double worldX = (x + viewX) / scale();
+        double worldY = (y + viewY) / scale();
+        zoomLevel = level;
+        viewX = (int) Math.round(worldX * scale() - x);
+        viewY = (int) Math.round(worldY * scale() - y);
+        repaint();
+    }
+
+    public void zoomIn() {
+        zoom(MENU_ZOOM_STEPS, getWidth() / 2, getHeight() / 2);
+    }
+
+    public void zoomOut() {
+        zoom(-MENU_ZOOM_STEPS, getWidth() / 2, getHeight() / 2);
+    }
+
+    // 回到 1:1，世界坐标原点在左上角
+    public void resetView() {
+        zoomLevel = 0;
+        viewX = 0;
+        viewY = 0;
+        repaint();
+    }
+
+    public double getZoom() {
+        return scale();
+    }
+
+    // 开启后整个视口在后台线程绘制，EDT 上只交换缓冲和贴图，文档再大菜单和工具栏也不会卡住
+    public void setBackgroundRendering(boolean enabled) {
+        if (enabled == (renderer != null)) return;
+        if (enabled) {
+            renderer = new BackgroundRenderer(getGraphicsConfiguration(), this::repaint);
+        } else {
+            renderer.shutdown();
+            renderer = null;
+            requested = null;
+        }
+        repaint();
+    }
+
+    public boolean isBackgroundRendering() {
+        return renderer != null;
+    }
+
+    // 在画布左上角显示绘制统计；统计本身也可以通过 JMX 开关和读取
+    public void setMetricsOverlayVisible(boolean visible) {
+        if (visible == overlayVisible) return;
+        overlayVisible = visible;
+        RenderMetrics metrics = RenderMetrics.get();
+        if (visible) {
+            metricsEnabledByOverlay = !metrics.isEnabled();
+            metrics.setEnabled(true);
+            overlayTimer.start();
+        } else {
+            if (metricsEnabledByOverlay) metrics.setEnabled(false);
+            overlayTimer.stop();
+        }
+        repaint(OVERLAY_BOUNDS);
+    }
+
+    public boolean isMetricsOverlayVisible() {
+        return overlayVisible;
+    }
+
+    // 拖动预览的目标帧率，默认取显示器刷新率
+    public void setTargetFps(int fps) {
+        pacer.setTargetFps(fps);
+    }
+
+    InputPacer getInputPacer() {
+        return pacer;
+    }
+
+    // 瓦片缓存可占用的内存上限（字节），超出后淘汰最久未显示的瓦片
+    public void setTileCacheMemory(long bytes) {
+        tiles.setMemoryLimit(bytes);
+    }
+
+    // 清空只是换上新的空仓库，旧仓库留在撤销记录里，撤销清空不需要复制任何图形
+    public void clearAll() {
+        tempPolygonPoints.clear();
+        if (document.isEmpty()) {
+            repaint();
+            return;
+        }
+        ClearEdit edit = new ClearEdit(document.shapes(), document.base());
+        document.replace(new ShapeStore(), null);
+        edits.addEdit(edit);
+    }
+
+    public void undo() {
+        if (edits.canUndo()) {
+            edits.undo();
+        }
+    }
+
+    public void redo() {
+        if (edits.canRedo()) {
+            edits.redo();
+        }
+    }
+
+    public boolean canUndo() {
+        return edits.canUndo();
+    }
+
+    public boolean canRedo() {
+        return edits.canRedo();
+    }
+
+    // 撤销记录可占用的内存上限（字节），超出后最早的操作不能再撤销
+    public void setUndoMemoryBudget(long bytes) {
+        edits.setMemoryBudget(bytes);
+    }
+
+    // 命中测试（世界坐标）：返回覆盖该点的最上层图形，没有则返回 null
+    public ShapeRecord findShapeAt(int x, int y) {
+        Rectangle point = new Rectangle(x, y, 1, 1);
+        ShapeRecord found = findShapeAt(document.shapes(), point);
+        if (found != null) return found;
+        // 打开的映射文档画在最下面，按块从后往前找，只解码包围盒含有该点的块
+        MappedDocument base = document.base();
+        if (base == null) return null;
+        for (int b = base.blockCount() - 1; b >= 0; b--) {
+            if (!base.blockIntersects(b, point)) continue;
+            try {
+                found = findShapeAt(base.block(b), point);
+            } catch (IOException e) {
+                e.printStackTrace();
+                continue;
+            }
+            if (found != null) return found;
+        }
+        return null;
+    }
+
+    private ShapeRecord findShapeAt(ShapeStore store, Rectangle point) {
+        store.query(point, queryResult);
+        for (int i = queryResult.size() - 1; i >= 0; i--) {
+            int id = queryResult.get(i);
+            if (hits(store, id, point.x, point.y)) return store.get(id);
+        }
+        return null;
+    }
+
+    private static boolean hits(ShapeStore history, int id, int x, int y) {
+        if (!history.getBounds(id).contains(x, y)) return false;
+        int ax = history.x1(id), ay = history.y1(id), bx = history.x2(id), by = history.y2(id);
+        Shape shape;
+        switch (history.type(id)) {
+            case ShapeStore.LINE:
+                shape = new Line2D.Float(ax, ay, bx, by);
+                break;
+            case ShapeStore.RECT:
+                shape = new Rectangle(Math.min(ax, bx), Math.min(ay, by), Math.abs(bx - ax), Math.abs(by - ay));
+                break;
+            case ShapeStore.OVAL:
+                shape = new Ellipse2D.Float(Math.min(ax, bx), Math.min(ay, by), Math.abs(bx - ax), Math.abs(by - ay));
+                break;
+            case ShapeStore.POLYGON:
+                shape = history.polygon(id);
+                break;
+            case ShapeStore.STROKE:
+                Polygon p = history.polygon(id);
+                Path2D.Float path = new Path2D.Float(Path2D.WIND_NON_ZERO, p.npoints);
+                path.moveTo(p.xpoints[0], p.ypoints[0]);
+                // 只有一个点时画一段零长度的线，描边后仍是一个小方块
+                for (int i = Math.min(1, p.npoints - 1); i < p.npoints; i++) {
+                    path.lineTo(p.xpoints[i], p.ypoints[i]);
+                }
+                shape = path;
+                break;
+            default:
+                return false;
+        }
+        if (history.isFilled(id) && shape.contains(x, y)) return true;
+        // 空心图形与直线按线条附近的容差判断
+        return new BasicStroke(2 * ShapeRenderer.PAINT_SLACK).createStrokedShape(shape).contains(x, y);
+    }
+
+    public boolean saveImage(File file) {
+        return exportImage(file, getWidth(), getHeight());
+    }
+
+    // 按任意分辨率导出 PNG（扩展名为 .qoi 时为 QOI），当前视口的内容等比例缩放到 width x height
+    public boolean exportImage(File file, int width, int height) {
+        int w = getWidth();
+        int h = getHeight();
+        if (w <= 0 || h <= 0 || width <= 0 || height <= 0) return false;
+
+        try {
+            newExporter().export(document.current(), getBackground(), viewport(), width, height, file, null);
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    // 整个画面导出为 SVG 或 PDF（按扩展名），图形逐个写出，不经过栅格化
+    public boolean exportVector(File file) {
+        try {
+            VectorExporter.export(document.current(), getBackground(), file);
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    // 保存为矢量文档（.drw），保留全部图形，可重新打开继续编辑
+    public boolean saveDocument(File file) {
+        try {
+            long start = System.nanoTime();
+            VectorFormat.write(document.current(), file);
+            RenderMetrics metrics = RenderMetrics.get();
+            if (metrics.isEnabled()) {
+                metrics.saveFinished(System.nanoTime() - start);
+            }
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    // 带块索引的文档以内存映射方式打开，图形在绘制时才按块解码，打开耗时与文档大小基本无关
+    public boolean openDocument(File file) {
+        try {
+            MappedDocument mapped = MappedDocument.open(file);
+            if (mapped != null) {
+                replaceContent(new ShapeStore(), mapped);
+            } else {
+                replaceContent(VectorFormat.read(file), null);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+        return true;
+    }
+
+    private void replaceContent(ShapeStore shapes, MappedDocument base) {
+        edits.discardAllEdits();
+        tempPolygonPoints.clear();
+        document.replace(shapes, base);
+    }
+
+    // 打开自动保存目录：恢复上次留下的内容，之后的每次修改都记入日志
+    public boolean openJournal(File dir) {
+        closeJournal();
+        try {
+            journal = Journal.open(dir);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+        // 恢复出的内容就是日志本身，挂上监听器之前替换，不必再写快照
+        ShapeStore recovered = journal.takeRecovered();
+        if (!recovered.isEmpty()) {
+            replaceContent(recovered, null);
+        } else if (!document.isEmpty()) {
+            journal.checkpoint(document.snapshot());
+        }
+        document.addListener(journal);
+        return true;
+    }
+
+    // 等日志全部写盘后关闭
+    public void closeJournal() {
+        if (journal != null) {
+            document.removeListener(journal);
+            journal.close();
+            journal = null;
+        }
+    }
+
+    // 批量添加图形，可在任意线程调用：图形在调用线程上转换，每 BULK_BATCH 个交给 EDT 提交一次
+    // 调用线程会等每一批提交完成，生成速度再快也不会在内存里堆积
+    public void addShapes(Iterable<ShapeRecord> records) {
+        Iterator<ShapeRecord> it = records.iterator();
+        ShapeBatch batch = new ShapeBatch(BULK_BATCH);
+        while (it.hasNext()) {
+            batch.add(it.next());
+            if (batch.size() == BULK_BATCH) {
+                addShapes(batch);
+                batch = new ShapeBatch(BULK_BATCH);
+            }
+        }
+        addShapes(batch);
+    }
+
+    public void addShapes(Stream<ShapeRecord> records) {
+        addShapes(records::iterator);
+    }
+
+    // 整批提交：只更新一次索引、瓦片和重绘区域，撤销时整批撤销；可在任意线程调用
+    public void addShapes(ShapeBatch batch) {
+        if (batch.isEmpty()) return;
+        ShapeStore shapes = batch.store;
+        if (SwingUtilities.isEventDispatchThread()) {
+            commitShapes(shapes);
+            return;
+        }
+        try {
+            SwingUtilities.invokeAndWait(() -> commitShapes(shapes));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (InvocationTargetException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void commitShapes(ShapeStore shapes) {
+        int first = document.shapes().size();
+        document.addAll(shapes);
+        edits.addEdit(new AddShapesEdit(first));
+    }
+
+    // 区域内的图形整体有增删：丢掉相交的瓦片，重绘一次
+    private void shapesChanged(Rectangle world) {
+        world.grow(ShapeRenderer.PAINT_SLACK, ShapeRenderer.PAINT_SLACK);
+        tiles.invalidate(world);
+        repaint(toView(world));
+    }
+
+    public int getShapeCount() {
+        return document.size();
+    }
+
+    // 异步保存：在 EDT 上只取文档的快照，渲染和编码放到后台线程
+    // 返回的 SwingWorker 通过 "progress" 属性报告进度，可用 cancel 取消；画布为空时返回 null
+    public SwingWorker<Boolean, Void> saveImageAsync(File file) {
+        int w = getWidth();
+        int h = getHeight();
+        if (w <= 0 || h <= 0) return null;
+
+        SwingWorker<Boolean, Void> worker = new ImageSaveWorker(document.snapshot(), getBackground(), viewport(), w, h,
+                file, newExporter());
+        worker.execute();
+        return worker;
+    }
+
+    private TiledExporter newExporter() {
+        TiledExporter exporter = new TiledExporter();
+        exporter.setReducedDetail(reducedDetail);
+        exporter.setCompressionLevel(exportCompressionLevel);
+        return exporter;
+    }
+
+    private void paintHistory(Graphics2D g2d) {
+        document.current().paint(g2d, reducedDetail || degraded);
+    }
+
+    private static Rectangle spanBounds(int x1, int y1, int x2, int y2) {
+        int x = Math.min(x1, x2);
+        int y = Math.min(y1, y2);
+        return new Rectangle(x - ShapeRenderer.PAINT_SLACK, y - ShapeRenderer.PAINT_SLACK,
+                Math.abs(x2 - x1) + 2 * ShapeRenderer.PAINT_SLACK + 1, Math.abs(y2 - y1) + 2 * ShapeRenderer.PAINT_SLACK + 1);
+    }
+
+    private Rectangle paintBounds(int id) {
+        Rectangle bounds = document.shapes().getBounds(id);
+        bounds.grow(ShapeRenderer.PAINT_SLACK, ShapeRenderer.PAINT_SLACK);
+        return bounds;
+    }
+
+    private double scale() {
+        return TileCache.scale(zoomLevel);
+    }
+
+    private int worldX(MouseEvent e) {
+        return (int) Math.floor((e.getX() + viewX) / scale());
+    }
+
+    private int worldY(MouseEvent e) {
+        return (int) Math.floor((e.getY() + viewY) / scale());
+    }
+
+    // 世界坐标区域在视口中占用的范围
+    private Rectangle toView(Rectangle world) {
+        double scale = scale();
+        int x0 = (int) Math.floor(world.x * scale) - viewX - ShapeRenderer.PAINT_SLACK;
+        int y0 = (int) Math.floor(world.y * scale) - viewY - ShapeRenderer.PAINT_SLACK;
+        int x1 = (int) Math.ceil((world.x + (double) world.width) * scale) - viewX + ShapeRenderer.PAINT_SLACK;
+        int y1 = (int) Math.ceil((world.y + (double) world.height) * scale) - viewY + ShapeRenderer.PAINT_SLACK;
+        return new Rectangle(x0, y0, x1 - x0, y1 - y0);
+    }
+
+    // 当前视口在世界坐标中的范围
+    private Rectangle2D viewport() {
+        double scale = scale();
+        return new Rectangle2D.Double(viewX / scale, viewY / scale, getWidth() / scale, getHeight() / scale);
+    }
+
+    // 只贴与重绘区域相交的瓦片，缺少的瓦片当场绘制并放进缓存
+    private void paintTiles(Graphics2D g2d) {
+        Rectangle clip = g2d.getClipBounds();
+        if (clip == null) clip = new Rectangle(0, 0, getWidth(), getHeight());
+        if (clip.isEmpty()) return;
+        int size = TileCache.TILE_SIZE;
+        tiles.reserve((getWidth() / size + 2) * (getHeight() / size + 2));
+        int tx0 = Math.floorDiv(viewX + clip.x, size);
+        int ty0 = Math.floorDiv(viewY + clip.y, size);
+        int tx1 = Math.floorDiv(viewX + clip.x + clip.width - 1, size);
+        int ty1 = Math.floorDiv(viewY + clip.y + clip.height - 1, size);
+        for (int ty = ty0; ty <= ty1; ty++) {
+            for (int tx = tx0; tx <= tx1; tx++) {
+                g2d.drawImage(getTile(tx, ty), tx * size - viewX, ty * size - viewY, null);
+            }
+        }
+    }
+
+    private void paintFromRenderer(Graphics2D g2d) {
+        requestFrame();
+        BackgroundRenderer.Frame front = renderer.paintFront(g2d, zoomLevel, viewX, viewY);
+        // 这一帧之后新增的图形还没被后台画到，先在 EDT 上补画
+        ShapeStore history = document.shapes();
+        if (front != null && front.source == history && front.shapes < history.size()) {
+            Graphics2D overlay = (Graphics2D) g2d.create();
+            setQualityHints(overlay);
+            overlay.translate(-viewX, -viewY);
+            overlay.scale(scale(), scale());
+            for (int id = front.shapes; id < history.size(); id++) {
+                ShapeRenderer.paintShape(overlay, history, id);
+            }
+            overlay.dispose();
+        }
+    }
+
+    // 视图或内容与上次提交的请求不同时才提交新请求；快照每个版本只取一次
+    private void requestFrame() {
+        int w = getWidth();
+        int h = getHeight();
+        if (w <= 0 || h <= 0) return;
+        boolean reduced = reducedDetail || degraded;
+        BackgroundRenderer.Frame last = requested;
+        long version = document.version();
+        if (last != null && requestedVersion == version && last.zoomLevel == zoomLevel
+                && last.viewX == viewX && last.viewY == viewY && last.width == w && last.height == h
+                && last.reduced == reduced && last.antialias == !degraded) {
+            return;
+        }
+        Scene snapshot = document.snapshot();
+        requested = new BackgroundRenderer.Frame(snapshot, getBackground(), zoomLevel, viewX, viewY, w, h,
+                reduced, !degraded, document.shapes(), snapshot.shapes.size());
+        requestedVersion = version;
+        renderer.submit(requested);
+    }
+
+    private BufferedImage getTile(int tx, int ty) {
+        BufferedImage tile = tiles.get(zoomLevel, tx, ty);
+        if (tile != null) return tile;
+
+        int size = TileCache.TILE_SIZE;
+        GraphicsConfiguration gc = getGraphicsConfiguration();
+        tile = gc != null
+                ? gc.createCompatibleImage(size, size, Transparency.OPAQUE)
+                : new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = tile.createGraphics();
+        g2d.setColor(getBackground());
+        g2d.fillRect(0, 0, size, size);
+        g2d.dispose();
+
+        g2d = TileCache.createGraphics(tile, zoomLevel, tx, ty);
+        setQualityHints(g2d);
+        paintHistory(g2d);
+        g2d.dispose();
+        tiles.put(zoomLevel, tx, ty, tile);
+        RenderMetrics metrics = RenderMetrics.get();
+        if (metrics.isEnabled()) {
+            metrics.tileRendered();
+        }
+        return tile;
+    }
+
+    private void setQualityHints(Graphics2D g2d) {
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                degraded ? RenderingHints.VALUE_ANTIALIAS_OFF : RenderingHints.VALUE_ANTIALIAS_ON);
+    }
+
+    private void noteInteraction() {
+        lastInteraction = System.nanoTime();
+        if (degraded) {
+            restoreTimer.restart();
+        }
+    }
+
+    private boolean isInteracting() {
+        return dragging || panning || System.nanoTime() - lastInteraction < RESTORE_DELAY_MS * 1_000_000L;
+    }
+
+    // 操作停下后整层按完整画质重绘；这一帧即使很慢也不会再次降级，因为此时没有交互
+    private void restoreQuality() {
+        if (!degraded) return;
+        if (isInteracting()) {
+            restoreTimer.restart();
+            return;
+        }
+        degraded = false;
+        tiles.clear();
+        repaint();
+    }
+
+    // 新增图形只需叠加到已缓存的瓦片上，不必重绘瓦片
+    private void paintCommitted(int id) {
+        Rectangle bounds = paintBounds(id);
+        boolean reduced = reducedDetail || degraded;
+        ShapeStore history = document.shapes();
+        tiles.paintOnto(bounds, g2d -> {
+            setQualityHints(g2d);
+            ShapeRenderer.paintShape(g2d, history, id, reduced ? ShapeRenderer.pixelSize(g2d) : 0);
+        });
+        repaint(toView(bounds));
+    }
+
+    private Rectangle computePreviewBounds() {
+        if ("polygon".equals(drawType)) {
+            if (tempPolygonPoints.isEmpty()) return null;
+            Point last = tempPolygonPoints.get(tempPolygonPoints.size() - 1);
+            return spanBounds(last.x, last.y, endX, endY);
+        }
+        return dragging ? spanBounds(startX, startY, endX, endY) : null;
+    }
+
+    // 只重绘上一帧与当前帧预览区域的并集
+    private void repaintPreview() {
+        repaintPreview(false);
+    }
+
+    // immediately 为 true 时当场同步绘制，省去排队等待重绘的延迟
+    private void repaintPreview(boolean immediately) {
+        Rectangle bounds = computePreviewBounds();
+        Rectangle dirty = previewBounds == null ? bounds
+                : bounds == null ? previewBounds : previewBounds.union(bounds);
+        previewBounds = bounds;
+        if (dirty == null) return;
+        if (immediately) {
+            paintImmediately(toView(dirty));
+        } else {
+            repaint(toView(dirty));
+        }
+    }
+
+    // 由 InputPacer 按帧率调用，画出合并后的最新位置
+    private void paintMotion() {
+        if (panning) {
+            repaint();
+        } else if (stroke != null) {
+            // 笔画只重绘新增或变化的线段
+            Rectangle dirty = stroke.takeDirty();
+            if (dirty != null) paintImmediately(toView(dirty));
+        } else {
+            repaintPreview(true);
+        }
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        RenderMetrics metrics = RenderMetrics.get();
+        boolean measure = metrics.isEnabled();
+        long frameStart = System.nanoTime();
+        super.paintComponent(g);
+        // 直接贴上缓存的瓦片或后台画好的一帧，平移和预览帧的开销与 history 大小无关
+        if (renderer != null) {
+            paintFromRenderer((Graphics2D) g);
+        } else {
+            paintTiles((Graphics2D) g);
+        }
+        long historyEnd = measure ? System.nanoTime() : 0;
+
+        // 预览图形按世界坐标绘制
+        Graphics2D g2d = (Graphics2D) g.create();
+        setQualityHints(g2d);
+        g2d.translate(-viewX, -viewY);
+        g2d.scale(scale(), scale());
+
+        // 绘制正在拖拽的图形（非多边形）
+        if (dragging && !"polygon".equals(drawType)) {
+            g2d.setColor(Color.GRAY);
+            switch (drawType) {
+                case "line":
+                    g2d.drawLine(startX, startY, endX, endY);
+                    break;
+                case "rect":
+                    int rx = Math.min(startX, endX);
+                    int ry = Math.min(startY, endY);
+                    int rw = Math.abs(endX - startX);
+                    int rh = Math.abs(endY - startY);
+                    if (isFilled) g2d.fillRect(rx, ry, rw, rh);
+                    else g2d.drawRect(rx, ry, rw, rh);
+                    break;
+                case "oval":
+                    int ox = Math.min(startX, endX);
+                    int oy = Math.min(startY, endY);
+                    int ow = Math.abs(endX - startX);
+                    int oh = Math.abs(endY - startY);
+                    if (isFilled) g2d.fillOval(ox, oy, ow, oh);
+                    else g2d.drawOval(ox, oy, ow, oh);
+                    break;
+            }
+        }
+
+        // 实时预览多边形（临时线）
+        if ("polygon".equals(drawType)) {
+            g2d.setColor(Color.MAGENTA);
+            // 已点击的点之间连线
+            if (tempPolygonPoints.size() >= 2) {
+                for (int i = 0; i < tempPolygonPoints.size() - 1; i++) {
+                    Point p1 = tempPolygonPoints.get(i);
+                    Point p2 = tempPolygonPoints.get(i + 1);
+                    g2d.drawLine(p1.x, p1.y, p2.x, p2.y);
+                }
+            }
+            // 最后一个点连到鼠标当前位置
+            if (!tempPolygonPoints.isEmpty()) {
+                Point last = tempPolygonPoints.get(tempPolygonPoints.size() - 1);
+                g2d.drawLine(last.x, last.y, endX, endY);
+            }
+        }
+
+        if (stroke != null) {
+            g2d.setColor(Color.BLACK);
+            stroke.paint(g2d);
+        }
+        g2d.dispose();
+
+        if (measure) {
+            metrics.framePainted(historyEnd - frameStart, System.nanoTime() - historyEnd);
+        }
+        if (overlayVisible) {
+            paintOverlay((Graphics2D) g, metrics);
+        }
+        pacer.painted();
+        if (!degraded && isInteracting() && System.nanoTime() - frameStart > FRAME_BUDGET_NANOS) {
+            degraded = true;
+            restoreTimer.restart();
+        }
+    }
+
+    private void paintOverlay(Graphics2D g2d, RenderMetrics m) {
+        String[] lines = {
+                String.format("帧 %d  历史 %.1f / p95 %s ms  预览 %.2f ms", m.getFrameCount(),
+                        m.getHistoryPaintMeanMillis(), formatBound(m.getHistoryPaintP95Millis()),
+                        m.getPreviewPaintMeanMillis()),
+                String.format("图形 绘制 %d  剔除 %d", m.getShapesDrawn(), m.getShapesCulled()),
+                String.format("瓦片 %d  后台帧 %d", m.getTilesRendered(), m.getBackgroundFrames()),
+                String.format("导出 %.0f ms  保存 %.0f ms", m.getLastExportMillis(), m.getLastSaveMillis()),
+                String.format("图形仓库 %.1f MB  瓦片缓存 %.1f MB",
+                        m.getShapeStoreBytes() / 1048576.0, m.getTileCacheBytes() / 1048576.0),
+                String.format("输入 %d  合并 %d  延迟 %.1f ms", m.getMotionEvents(), m.getDroppedMotionEvents(),
+                        m.getMeanInputLatencyMillis()),
+        };
+        g2d.setColor(new Color(0, 0, 0, 160));
+        g2d.fill(OVERLAY_BOUNDS);
+        g2d.setColor(Color.WHITE);
+        g2d.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 11));
+        int lineHeight = (OVERLAY_BOUNDS.height - 8) / lines.length;
+        for (int i = 0; i < lines.length; i++) {
+            g2d.drawString(lines[i], OVERLAY_BOUNDS.x + 6, OVERLAY_BOUNDS.y + 4 + lineHeight * (i + 1) - 3);
+        }
+    }
+
+    // 直方图最后一个桶没有上限
+    private static String formatBound(double millis) {
+        return Double.isInfinite(millis) ? ">1024" : String.format("%.0f", millis);
+    }
+
+    @Override
+    public void mousePressed(MouseEvent e) {
+        noteInteraction();
+        if (isPanButton(e)) {
+            panning = true;
+            panX = e.getX();
+            panY = e.getY();
+            return;
+        }
+        startX = worldX(e);
+        startY = worldY(e);
+        dragging = true;
+        if ("pencil".equals(drawType)) {
+            // 简化容差为一个屏幕像素
+            stroke = new StrokeBuilder(startX, startY, 1 / scale());
+            pacer.motion();
+        } else if ("polygon".equals(drawType)) {
+            // ✅ 修复：添加当前鼠标位置作为顶点
+            Point p = new Point();
+            p.x = startX;
+            p.y = startY;
+            tempPolygonPoints.add(p);
+            endX = startX;
+            endY = startY;
+            repaintPreview();
+        }
+    }
+
+    @Override
+    public void mouseDragged(MouseEvent e) {
+        noteInteraction();
+        if (panning) {
+            viewX -= e.getX() - panX;
+            viewY -= e.getY() - panY;
+            panX = e.getX();
+            panY = e.getY();
+            pacer.motion();
+            return;
+        }
+        endX = worldX(e);
+        endY = worldY(e);
+        if (stroke != null) {
+            // 每个事件的点都要记下，合并的只是重绘
+            if (stroke.add(endX, endY)) pacer.motion();
+            return;
+        }
+        pacer.motion();
+    }
+
+    @Override
+    public void mouseReleased(MouseEvent e) {
+        noteInteraction();
+        if (panning) {
+            panning = false;
+            return;
+        }
+        endX = worldX(e);
+        endY = worldY(e);
+        dragging = false;
+        if (stroke != null) {
+            stroke.add(endX, endY);
+            StrokeBuilder done = stroke;
+            stroke = null;
+            document.addVertices(ShapeStore.STROKE, done.xpoints(), done.ypoints(), done.size(), false);
+            edits.addEdit(new AddShapeEdit());
+            return;
+        }
+        // 非多边形图形直接保存
+        if (!"polygon".equals(drawType)) {
+            document.add(ShapeStore.typeCode(drawType), startX, startY, endX, endY, isFilled);
+            edits.addEdit(new AddShapeEdit());
+            repaintPreview();
+        }
+        // 多边形不在此处保存（由 mouseClicked 双击完成）
+    }
+
+    @Override
+    public void mouseClicked(MouseEvent e) {
+        // ✅ 双击完成多边形
+        if ("polygon".equals(drawType) && e.getClickCount() == 2 && !isPanButton(e)) {
+            int n = tempPolygonPoints.size();
+            if (n >= 3) {
+                int[] xs = new int[n];
+                int[] ys = new int[n];
+                for (int i = 0; i < n; i++) {
+                    xs[i] = tempPolygonPoints.get(i).x;
+                    ys[i] = tempPolygonPoints.get(i).y;
+                }
+                document.addVertices(ShapeStore.POLYGON, xs, ys, n, isFilled);
+                edits.addEdit(new AddShapeEdit());
+            }
+            tempPolygonPoints.clear();
+            repaintPreview();
+        }
+    }
+
+    @Override
+    public void mouseEntered(MouseEvent e) {}
+
+    @Override
+    public void mouseExited(MouseEvent e) {}
+
+    @Override
+    public void mouseMoved(MouseEvent e) {
+        endX = worldX(e);
+        endY = worldY(e);
+        if ("polygon".equals(drawType)) {
+            pacer.motion(); // 实时更新预览线
+        }
+    }
+
+    // 滚轮以鼠标所在位置为中心缩放
+    @Override
+    public void mouseWheelMoved(MouseWheelEvent e) {
+        noteInteraction();
+        zoom(-e.getWheelRotation(), e.getX(), e.getY());
+    }
+
+    private static boolean isPanButton(MouseEvent e) {
+        return SwingUtilities.isMiddleMouseButton(e) || SwingUtilities.isRightMouseButton(e);
+    }
+
+    // 新增一个图形（含多边形）；撤销时把图形取出保存，供重做使用
+    private class AddShapeEdit extends AbstractUndoableEdit implements EditHistory.Sized {
+        private static final long serialVersionUID = 1L;
+        private ShapeRecord removed;
+
+        @Override
+        public void undo() {
+            super.undo();
+            removed = document.removeLast();
+        }
+
+        @Override
+        public void redo() {
+            super.redo();
+            document.add(removed);
+            removed = null;
+        }
+
+        @Override
+        public long footprintBytes() {
+            if (removed == null) return 16;
+            return 64 + (removed.points == null ? 0 : 40L * removed.points.size());
+        }
+
+        @Override
+        public String getPresentationName() {
+            return "绘制";
+        }
+    }
+
+    // 批量添加的一批图形，撤销与重做都是整批进行
+    private class AddShapesEdit extends AbstractUndoableEdit implements EditHistory.Sized {
+        private static final long serialVersionUID = 1L;
+        private final int first;
+        private ShapeStore removed;
+
+        AddShapesEdit(int first) {
+            this.first = first;
+        }
+
+        @Override
+        public void undo() {
+            super.undo();
+            removed = document.removeFrom(first);
+        }
+
+        @Override
+        public void redo() {
+            super.redo();
+            document.addAll(removed);
+            removed = null;
+        }
+
+        @Override
+        public long footprintBytes() {
+            return removed == null ? 16 : removed.footprintBytes();
+        }
+
+        @Override
+        public String getPresentationName() {
+            return "批量添加";
+        }
+    }
+
+    // 文档内容变化时更新瓦片缓存并重绘受影响的区域
+    private class ContentListener implements DrawingDocument.Listener {
+        @Override
+        public void shapesAdded(DrawingDocument doc, int from, int to) {
+            if (to - from == 1) {
+                paintCommitted(from);
+            } else {
+                shapesChanged(doc.shapes().getBounds(from, to));
+            }
+        }
+
+        @Override
+        public void shapesRemoved(DrawingDocument doc, int from, int to, Rectangle bounds) {
+            shapesChanged(bounds);
+        }
+
+        @Override
+        public void contentReplaced(DrawingDocument doc) {
+            tiles.clear();
+            repaint();
+        }
+    }
+
+    // 清空画布；前后两个状态都只是对象引用，撤销与重做都是 O(1)
+    private class ClearEdit extends AbstractUndoableEdit implements EditHistory.Sized {
+        private static final long serialVersionUID = 1L;
+        private final ShapeStore clearedShapes;
+        private final MappedDocument clearedBase;
+        private ShapeStore replacement;
+
+        ClearEdit(ShapeStore clearedShapes, MappedDocument clearedBase) {
+            this.clearedShapes = clearedShapes;
+            this.clearedBase = clearedBase;
+        }
+
+        @Override
+        public void undo() {
+            super.undo();
+            replacement = document.shapes();
+            document.replace(clearedShapes, clearedBase);
+        }
+
+        @Override
+        public void redo() {
+            super.redo();
+            document.replace(replacement, null);
+        }
+
+        @Override
+        public long footprintBytes() {
+            // 撤销后持有的是清空后画的那些图形
+            if (canRedo()) return replacement == null ? 0 : replacement.footprintBytes();
+            return clearedShapes.footprintBytes();
+        }
+
+        @Override
+        public String getPresentationName() {
+            return "清除画布";
+        }
+    }
 }
\ No newline at end of file
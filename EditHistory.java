@@ -0,0 +1,90 @@
+package com.outprogram.ui;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import javax.swing.undo.UndoableEdit;
+
+// 撤销/重做记录：操作用 javax.swing.undo 的 UndoableEdit 表示，按估算内存而不是条数限制长度
+// 超出预算时从最早的记录开始丢弃，丢弃后那些操作不能再撤销，画面不受影响
+class EditHistory {
+    static final long DEFAULT_BUDGET = 64L << 20;
+
+    // 能报告自身占用内存的操作
+    interface Sized {
+        long footprintBytes();
+    }
+
+    private final Deque<UndoableEdit> undoStack = new ArrayDeque<>();
+    private final Deque<UndoableEdit> redoStack = new ArrayDeque<>();
+    private long budget = DEFAULT_BUDGET;
+    private long used;
+
+    void setMemoryBudget(long bytes) {
+        budget = bytes;
+        trimToBudget();
+    }
+
+    long getMemoryUsed() {
+        return used;
+    }
+
+    // 新操作会使所有可重做的操作失效
+    void addEdit(UndoableEdit edit) {
+        while (!redoStack.isEmpty()) {
+            discard(redoStack.pop());
+        }
+        undoStack.addLast(edit);
+        used += sizeOf(edit);
+        trimToBudget();
+    }
+
+    boolean canUndo() {
+        return !undoStack.isEmpty();
+    }
+
+    boolean canRedo() {
+        return !redoStack.isEmpty();
+    }
+
+    void undo() {
+        UndoableEdit edit = undoStack.removeLast();
+        long before = sizeOf(edit);
+        edit.undo();
+        used += sizeOf(edit) - before;
+        redoStack.push(edit);
+    }
+
+    void redo() {
+        UndoableEdit edit = redoStack.pop();
+        long before = sizeOf(edit);
+        edit.redo();
+        used += sizeOf(edit) - before;
+        undoStack.addLast(edit);
+        trimToBudget();
+    }
+
+    void discardAllEdits() {
+        while (!undoStack.isEmpty()) {
+            discard(undoStack.removeLast());
+        }
+        while (!redoStack.isEmpty()) {
+            discard(redoStack.pop());
+        }
+    }
+
+    // 至少保留最近一条，保证刚做的操作总能撤销
+    private void trimToBudget() {
+        while (used > budget && undoStack.size() > 1) {
+            discard(undoStack.removeFirst());
+        }
+    }
+
+    private void discard(UndoableEdit edit) {
+        used -= sizeOf(edit);
+        edit.die();
+    }
+
+    private static long sizeOf(UndoableEdit edit) {
+        return edit instanceof Sized ? ((Sized) edit).footprintBytes() : 0;
+    }
+}
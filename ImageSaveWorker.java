@@ -0,0 +1,44 @@
+package com.outprogram.ui;
+
+import java.awt.Color;
+import java.awt.geom.Rectangle2D;
+import java.io.File;
+import java.io.IOException;
+import javax.swing.SwingWorker;
+
+// 在后台线程把画面快照导出为 PNG 或 QOI，进度按条带计算；文件名为 .svg 或 .pdf 时导出整个画面的矢量图
+class ImageSaveWorker extends SwingWorker<Boolean, Void> implements TiledExporter.Progress {
+    private final Scene snapshot;
+    private final Color background;
+    private final Rectangle2D source;
+    private final int width;
+    private final int height;
+    private final File file;
+    private final TiledExporter exporter;
+
+    ImageSaveWorker(Scene snapshot, Color background, Rectangle2D source, int width, int height, File file,
+                    TiledExporter exporter) {
+        this.snapshot = snapshot;
+        this.background = background;
+        this.source = source;
+        this.width = width;
+        this.height = height;
+        this.file = file;
+        this.exporter = exporter;
+    }
+
+    @Override
+    protected Boolean doInBackground() throws IOException {
+        if (VectorExporter.supports(file)) {
+            VectorExporter.export(snapshot, background, file, this);
+            return true;
+        }
+        exporter.export(snapshot, background, source, width, height, file, this);
+        return true;
+    }
+
+    @Override
+    public void update(int done, int total) {
+        setProgress(done * 100 / total);
+    }
+}
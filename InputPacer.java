@@ -0,0 +1,123 @@
+package com.outprogram.ui;
+
+import java.awt.DisplayMode;
+import java.awt.GraphicsEnvironment;
+import javax.swing.Timer;
+
+// 鼠标移动事件的合并与限帧：事件只记下最新位置，预览按目标帧率重绘
+// 距上一帧已超过一个帧间隔时立即重绘，否则推迟到下一帧，最新位置总会被画出来
+// 所有方法都在 EDT 上调用
+final class InputPacer {
+    static final int DEFAULT_FPS = 60;
+
+    private final Runnable paintFrame;
+    private final Timer timer;
+    private long frameNanos;
+    private long lastFrame;
+    private boolean pending;
+    // 最新事件的到达时间，以及已请求重绘、尚未画出的那个事件的到达时间；-1 表示没有
+    private long latestEvent = -1;
+    private long awaitingPaint = -1;
+
+    private long events;
+    private long frames;
+    private long latencySamples;
+    private long latencyTotal;
+    private long latencyMax;
+
+    InputPacer(int fps, Runnable paintFrame) {
+        this.paintFrame = paintFrame;
+        timer = new Timer(0, e -> {
+            if (pending) flush(System.nanoTime());
+        });
+        timer.setRepeats(false);
+        setTargetFps(fps);
+    }
+
+    // 显示器刷新率，取不到时用 DEFAULT_FPS
+    static int displayRefreshRate() {
+        if (GraphicsEnvironment.isHeadless()) return DEFAULT_FPS;
+        int rate = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice()
+                .getDisplayMode().getRefreshRate();
+        return rate == DisplayMode.REFRESH_RATE_UNKNOWN ? DEFAULT_FPS : rate;
+    }
+
+    void setTargetFps(int fps) {
+        if (fps <= 0) throw new IllegalArgumentException("fps must be positive: " + fps);
+        frameNanos = 1_000_000_000L / fps;
+    }
+
+    int getTargetFps() {
+        return (int) (1_000_000_000L / frameNanos);
+    }
+
+    // 收到一个移动事件，位置已由调用方记下
+    void motion() {
+        long now = System.nanoTime();
+        events++;
+        latestEvent = now;
+        pending = true;
+        long due = lastFrame + frameNanos;
+        if (now - due >= 0) {
+            timer.stop();
+            flush(now);
+        } else if (!timer.isRunning()) {
+            timer.setInitialDelay((int) Math.max(1, (due - now + 999_999) / 1_000_000));
+            timer.start();
+        }
+    }
+
+    // paintComponent 结束时调用，统计从事件到画面的延迟
+    void painted() {
+        if (awaitingPaint < 0) return;
+        long latency = System.nanoTime() - awaitingPaint;
+        awaitingPaint = -1;
+        latencySamples++;
+        latencyTotal += latency;
+        latencyMax = Math.max(latencyMax, latency);
+    }
+
+    private void flush(long now) {
+        pending = false;
+        lastFrame = now;
+        frames++;
+        awaitingPaint = latestEvent;
+        latestEvent = -1;
+        paintFrame.run();
+    }
+
+    long getEventCount() {
+        return events;
+    }
+
+    long getFrameCount() {
+        return frames;
+    }
+
+    // 被合并掉、没有单独画出的事件数
+    long getDroppedCount() {
+        return events - frames;
+    }
+
+    double getMeanLatencyMillis() {
+        return latencySamples == 0 ? 0 : latencyTotal / 1e6 / latencySamples;
+    }
+
+    double getMaxLatencyMillis() {
+        return latencyMax / 1e6;
+    }
+
+    void resetStatistics() {
+        events = 0;
+        frames = 0;
+        latencySamples = 0;
+        latencyTotal = 0;
+        latencyMax = 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d events, %d frames, %d dropped, latency mean %.2f ms, max %.2f ms",
+                events, frames, getDroppedCount(), getMeanLatencyMillis(), getMaxLatencyMillis());
+    }
+}
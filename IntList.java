@@ -0,0 +1,61 @@
+package com.outprogram.ui;
+
+import java.util.Arrays;
+
+// 可增长的 int 数组，避免装箱
+class IntList {
+    private int[] data;
+    private int size;
+
+    IntList() {
+        this(8);
+    }
+
+    IntList(int capacity) {
+        data = new int[Math.max(capacity, 1)];
+    }
+
+    void add(int value) {
+        if (size == data.length) {
+            data = Arrays.copyOf(data, size * 2);
+        }
+        data[size++] = value;
+    }
+
+    int get(int index) {
+        return data[index];
+    }
+
+    int last() {
+        return data[size - 1];
+    }
+
+    void removeLast() {
+        size--;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    // 排序并去掉重复值
+    void sortUnique() {
+        if (size < 2) return;
+        Arrays.sort(data, 0, size);
+        int n = 1;
+        for (int i = 1; i < size; i++) {
+            if (data[i] != data[n - 1]) {
+                data[n++] = data[i];
+            }
+        }
+        size = n;
+    }
+}
@@ -0,0 +1,476 @@
+package com.outprogram.ui;
+
+import java.awt.Rectangle;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+// 绘图内容的预写日志：每次新增、撤销、清空都追加一条记录，进程意外退出后可以从快照加日志恢复
+// EDT 只把记录编码进内存缓冲；后台线程负责写盘和 fsync，写盘期间到达的记录在下一轮一起提交
+//
+// 目录中的文件按代号 gen 成对出现：autosave-<gen>.drw 为快照（VectorFormat），autosave-<gen>.journal 为其后的日志
+// gen 0 没有快照，表示从空画布开始。压缩时先写好 gen+1 的快照，再换用新的日志，最后删除旧的一代
+// 日志文件: "DRWJ" + 版本号(1 字节)，之后每条记录为 长度(4) + CRC32(4) + 内容，末尾写了一半的记录在恢复时丢弃
+// 作为 DrawingDocument 的监听器挂上后，文档的每次修改都会自动记入
+final class Journal implements DrawingDocument.Listener {
+    static final byte[] MAGIC = {'D', 'R', 'W', 'J'};
+    static final int VERSION = 1;
+    private static final String PREFIX = "autosave-";
+    private static final String SNAPSHOT_SUFFIX = VectorFormat.EXTENSION;
+    private static final String JOURNAL_SUFFIX = ".journal";
+    private static final int HEADER_SIZE = MAGIC.length + 1;
+    // 两次写盘之间至少间隔这么久，连续的操作合并成一次 fsync
+    private static final long COMMIT_INTERVAL_NANOS = 20_000_000L;
+    // 日志超过这个大小，且超过快照的一半时压缩
+    private static final long MIN_CHECKPOINT_BYTES = 4L << 20;
+
+    private static final byte ADD = 1;
+    private static final byte REMOVE_LAST = 2;
+    private static final byte CLEAR = 3;
+
+    private final File dir;
+    private final Object lock = new Object();
+    private final Thread thread;
+    // EDT 写入的记录，后台线程整块取走
+    private ByteBuffer pending = ByteBuffer.allocate(1 << 16);
+    private ByteBuffer spare = ByteBuffer.allocate(1 << 16);
+    // 待写的快照，以及它在 pending 中的位置：之前的记录已包含在快照里
+    private Scene checkpoint;
+    private int checkpointOffset;
+    private boolean running = true;
+    private boolean idle = true;
+    // 后台线程正在等待新记录；只有这时才需要唤醒它
+    private boolean waiting;
+    // 快照已请求、尚未写完，这期间不再请求新的快照
+    private boolean compacting;
+
+    // 以下只在后台线程上访问
+    private FileChannel channel;
+    private long gen;
+    private long commits;
+    private long lastCommit;
+
+    // 两个线程都会读，只是用来决定何时压缩
+    private volatile long journalBytes;
+    private volatile long snapshotBytes;
+
+    private ShapeStore recovered;
+
+    private Journal(File dir) {
+        this.dir = dir;
+        thread = new Thread(this::run, "DrawingPanel-journal");
+        thread.setDaemon(true);
+    }
+
+    // 恢复目录中最新的一代并打开其日志继续追加；目录不存在时创建
+    static Journal open(File dir) throws IOException {
+        Files.createDirectories(dir.toPath());
+        Journal journal = new Journal(dir);
+        journal.recover();
+        journal.thread.start();
+        return journal;
+    }
+
+    // 恢复出的图形，只能取一次
+    ShapeStore takeRecovered() {
+        ShapeStore store = recovered;
+        recovered = null;
+        return store;
+    }
+
+    // 从最新的一代往前找第一代能完整读出的；旧的一代要等新快照落盘后才删除，最新的快照读不出时还可以退回上一代
+    private void recover() throws IOException {
+        List<Long> generations = new ArrayList<>();
+        String[] names = dir.list();
+        if (names != null) {
+            for (String name : names) {
+                long g = generation(name, SNAPSHOT_SUFFIX);
+                if (g > 0) generations.add(g);
+            }
+        }
+        if (generations.isEmpty() || journalFile(0).exists()) generations.add(0L);
+        generations.sort(Collections.reverseOrder());
+
+        IOException failure = null;
+        for (long g : generations) {
+            try {
+                recovered = recover(g);
+                deleteOlderThan(gen);
+                return;
+            } catch (IOException e) {
+                e.printStackTrace();
+                if (failure == null) failure = e;
+            }
+        }
+        throw failure;
+    }
+
+    private ShapeStore recover(long g) throws IOException {
+        File snapshot = snapshotFile(g);
+        ShapeStore store = g > 0 ? VectorFormat.read(snapshot) : new ShapeStore();
+
+        FileChannel file = FileChannel.open(journalFile(g).toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            long valid = replay(file, store);
+            if (valid < 0) {
+                // 新建的或头部都没写完的日志
+                file.truncate(0);
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                header.put(MAGIC).put((byte) VERSION).flip();
+                file.write(header, 0);
+                valid = HEADER_SIZE;
+            } else {
+                file.truncate(valid);
+            }
+            file.position(valid);
+            file.force(false);
+            VectorFormat.syncDirectory(dir);
+            journalBytes = valid;
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+        channel = file;
+        gen = g;
+        snapshotBytes = g > 0 ? snapshot.length() : 0;
+        return store;
+    }
+
+    // 把日志中的记录应用到 store 上，返回最后一条完整记录之后的偏移；没有有效文件头时返回 -1
+    private static long replay(FileChannel channel, ShapeStore store) throws IOException {
+        long length = channel.size();
+        if (length < HEADER_SIZE) return -1;
+        ByteBuffer data = ByteBuffer.allocate((int) Math.min(length, Integer.MAX_VALUE));
+        while (data.hasRemaining()) {
+            if (channel.read(data, data.position()) < 0) break;
+        }
+        data.flip();
+        for (byte b : MAGIC) {
+            if (data.get() != b) throw new IOException("Not a drawing journal");
+        }
+        if (data.get() != VERSION) throw new IOException("Unsupported journal version");
+
+        CRC32 crc = new CRC32();
+        int[] xs = new int[16], ys = new int[16];
+        while (data.remaining() >= 8) {
+            int start = data.position();
+            int size = data.getInt();
+            int sum = data.getInt();
+            if (size <= 0 || size > data.remaining()) {
+                data.position(start);
+                break;
+            }
+            crc.reset();
+            ByteBuffer body = data.slice();
+            body.limit(size);
+            crc.update(body.duplicate());
+            if ((int) crc.getValue() != sum) {
+                data.position(start);
+                break;
+            }
+            data.position(data.position() + size);
+            byte op = body.get();
+            if (op == ADD) {
+                byte type = body.get();
+                boolean filled = body.get() != 0;
+                if (ShapeStore.hasVertices(type)) {
+                    int n = body.getInt();
+                    if (xs.length < n) {
+                        xs = new int[n];
+                        ys = new int[n];
+                    }
+                    for (int i = 0; i < n; i++) {
+                        xs[i] = body.getInt();
+                        ys[i] = body.getInt();
+                    }
+                    store.addVertices(type, xs, ys, n, filled);
+                } else {
+                    store.add(type, body.getInt(), body.getInt(), body.getInt(), body.getInt(), filled);
+                }
+            } else if (op == REMOVE_LAST) {
+                if (!store.isEmpty()) store.removeLast();
+            } else if (op == CLEAR) {
+                store.clear();
+            } else {
+                throw new IOException("Corrupt journal: unknown record " + op);
+            }
+        }
+        return data.position();
+    }
+
+    void add(ShapeStore store, int id) {
+        byte type = store.type(id);
+        boolean vertices = ShapeStore.hasVertices(type);
+        int size = 3 + (vertices ? 4 + 8 * store.vertexCount(id) : 16);
+        synchronized (lock) {
+            ByteBuffer out = begin(size);
+            out.put(ADD).put(type).put((byte) (store.isFilled(id) ? 1 : 0));
+            if (vertices) {
+                int n = store.vertexCount(id);
+                out.putInt(n);
+                for (int i = 0; i < n; i++) {
+                    out.putInt(store.vertexX(id, i)).putInt(store.vertexY(id, i));
+                }
+            } else {
+                out.putInt(store.x1(id)).putInt(store.y1(id)).putInt(store.x2(id)).putInt(store.y2(id));
+            }
+            end(size);
+        }
+    }
+
+    void removeLast() {
+        append(REMOVE_LAST);
+    }
+
+    void clear() {
+        append(CLEAR);
+    }
+
+    @Override
+    public void shapesAdded(DrawingDocument document, int from, int to) {
+        ShapeStore shapes = document.shapes();
+        for (int id = from; id < to; id++) {
+            add(shapes, id);
+        }
+        // 一批记录全部写入后再判断，快照之后不能再有这批图形的记录
+        if (needsCheckpoint()) checkpoint(document.snapshot());
+    }
+
+    @Override
+    public void shapesRemoved(DrawingDocument document, int from, int to, Rectangle bounds) {
+        for (int id = from; id < to; id++) {
+            removeLast();
+        }
+    }
+
+    // 清空只记一条，其他整体替换不便逐条记录，直接写快照
+    @Override
+    public void contentReplaced(DrawingDocument document) {
+        if (document.isEmpty()) {
+            clear();
+        } else {
+            checkpoint(document.snapshot());
+        }
+    }
+
+    private void append(byte op) {
+        synchronized (lock) {
+            begin(1).put(op);
+            end(1);
+        }
+    }
+
+    // 预留记录头，返回写记录内容用的缓冲区；调用方持有锁
+    private ByteBuffer begin(int size) {
+        if (pending.remaining() < size + 8) {
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + size + 8));
+            pending.flip();
+            grown.put(pending);
+            pending = grown;
+        }
+        pending.putInt(size).putInt(0);
+        return pending;
+    }
+
+    // 补上校验和并唤醒后台线程
+    private void end(int size) {
+        int bodyStart = pending.position() - size;
+        CRC32 crc = new CRC32();
+        ByteBuffer body = pending.duplicate();
+        body.position(bodyStart).limit(bodyStart + size);
+        crc.update(body);
+        pending.putInt(bodyStart - 4, (int) crc.getValue());
+        if (waiting) lock.notifyAll();
+    }
+
+    // 日志相对快照已经过大
+    boolean needsCheckpoint() {
+        long bytes;
+        synchronized (lock) {
+            if (compacting) return false;
+            bytes = journalBytes + pending.position();
+        }
+        return bytes > Math.max(MIN_CHECKPOINT_BYTES, snapshotBytes / 2);
+    }
+
+    // 把整个画面写成新的快照并换用新日志；scene 必须是不会再改变的快照
+    // 内容被整体替换（打开文档、撤销清空）时也用它代替逐条记录
+    void checkpoint(Scene scene) {
+        synchronized (lock) {
+            checkpoint = scene;
+            checkpointOffset = pending.position();
+            compacting = true;
+            lock.notifyAll();
+        }
+    }
+
+    // 等到此前的记录都已写盘后再返回
+    void flush() {
+        synchronized (lock) {
+            while ((pending.position() > 0 || checkpoint != null || !idle) && thread.isAlive()) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    void close() {
+        flush();
+        synchronized (lock) {
+            running = false;
+            lock.notifyAll();
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        while (true) {
+            synchronized (lock) {
+                idle = true;
+                lock.notifyAll();
+                while (running && pending.position() == 0 && checkpoint == null) {
+                    waiting = true;
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        running = false;
+                    }
+                    waiting = false;
+                }
+                if (pending.position() == 0 && checkpoint == null) break;
+                idle = false;
+            }
+            // 距上次写盘不足一个间隔时先等一等，让这段时间里到达的记录一起写盘
+            long delay = lastCommit + COMMIT_INTERVAL_NANOS - System.nanoTime();
+            if (delay > 0) {
+                try {
+                    Thread.sleep(delay / 1_000_000, (int) (delay % 1_000_000));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            ByteBuffer batch;
+            Scene scene;
+            int offset;
+            synchronized (lock) {
+                batch = pending;
+                pending = spare;
+                pending.clear();
+                spare = batch;
+                scene = checkpoint;
+                offset = checkpointOffset;
+                checkpoint = null;
+            }
+            batch.flip();
+            try {
+                if (scene != null) {
+                    ByteBuffer before = batch.duplicate();
+                    before.limit(offset);
+                    write(before);
+                    batch.position(offset);
+                    // 快照写失败时后面的记录照样写进旧日志
+                    try {
+                        startGeneration(scene);
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                    synchronized (lock) {
+                        if (checkpoint == null) compacting = false;
+                    }
+                }
+                write(batch);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // 一次写入并 fsync 一批记录
+    private void write(ByteBuffer batch) throws IOException {
+        if (!batch.hasRemaining()) return;
+        while (batch.hasRemaining()) {
+            channel.write(batch);
+        }
+        channel.force(false);
+        journalBytes = channel.position();
+        commits++;
+        lastCommit = System.nanoTime();
+    }
+
+    private void startGeneration(Scene scene) throws IOException {
+        long next = gen + 1;
+        File snapshot = snapshotFile(next);
+        VectorFormat.write(scene, snapshot);
+        FileChannel fresh = FileChannel.open(journalFile(next).toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.put(MAGIC).put((byte) VERSION).flip();
+        while (header.hasRemaining()) {
+            fresh.write(header);
+        }
+        fresh.force(false);
+        // 新快照的改名和新日志都落盘之后才能删除上一代
+        VectorFormat.syncDirectory(dir);
+        channel.close();
+        channel = fresh;
+        gen = next;
+        journalBytes = HEADER_SIZE;
+        snapshotBytes = snapshot.length();
+        deleteOlderThan(gen);
+    }
+
+    private void deleteOlderThan(long keep) throws IOException {
+        String[] names = dir.list();
+        if (names == null) return;
+        for (String name : names) {
+            long g = Math.max(generation(name, SNAPSHOT_SUFFIX), generation(name, JOURNAL_SUFFIX));
+            if (g >= 0 && g < keep) Files.deleteIfExists(new File(dir, name).toPath());
+        }
+    }
+
+    private File snapshotFile(long g) {
+        return new File(dir, PREFIX + g + SNAPSHOT_SUFFIX);
+    }
+
+    private File journalFile(long g) {
+        return new File(dir, PREFIX + g + JOURNAL_SUFFIX);
+    }
+
+    // 文件名中的代号；不是该类文件时返回 -1
+    private static long generation(String name, String suffix) {
+        if (!name.startsWith(PREFIX) || !name.endsWith(suffix)) return -1;
+        try {
+            return Long.parseLong(name.substring(PREFIX.length(), name.length() - suffix.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("gen %d, %d commits, journal %d bytes, snapshot %d bytes",
+                gen, commits, journalBytes, snapshotBytes);
+    }
+}
@@ -1,164 +1,290 @@
-package com.outprogram.ui;
-
-import java.awt.*;
-import java.awt.event.*;
-import java.io.File;
-import javax.swing.*;
-
-
-
-public class MainFrame extends JFrame {
-    private DrawingPanel drawingPanel;
-    private JLabel statusLabel;
-    private JCheckBoxMenuItem fillItem;
-
-    public MainFrame() {
-        initUI();
-    }
-
-    private void initUI() {
-        setTitle("ͼ v1.0");
-        setSize(800, 600);
-        setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-        setLocationRelativeTo(null);
-        setLayout(new BorderLayout());
-
-        initMenuBar();
-        initToolBar();
-        initDrawingPanel();
-
-        setVisible(true);
-    }
-
-    private void initMenuBar() {
-        JMenuBar menuBar = new JMenuBar();
-
-        JMenu fileMenu = new JMenu("ļ");
-        fileMenu.setMnemonic('F');
-
-        JMenuItem saveItem = new JMenuItem("");
-        JMenuItem exitItem = new JMenuItem("˳");
-
-        exitItem.addActionListener(e -> System.exit(0));
-
-        saveItem.addActionListener(e -> {
-            JFileChooser chooser = new JFileChooser();
-            chooser.setDialogTitle("ͼ");
-            chooser.setSelectedFile(new File("drawing.png"));
-            int result = chooser.showSaveDialog(MainFrame.this);
-            if (result == JFileChooser.APPROVE_OPTION) {
-                File file = chooser.getSelectedFile();
-                if (!file.getName().toLowerCase().endsWith(".png")) {
-                    file = new File(file.getAbsolutePath() + ".png");
-                }
-                if (drawingPanel.saveImage(file)) {
-                    JOptionPane.showMessageDialog(this, "ͼѱ棡", "ɹ", JOptionPane.INFORMATION_MESSAGE);
-                } else {
-                    JOptionPane.showMessageDialog(this, "ʧܣ", "", JOptionPane.ERROR_MESSAGE);
-                }
-            }
-        });
-
-        fileMenu.add(saveItem);
-        fileMenu.addSeparator();
-        fileMenu.add(exitItem);
-
-        JMenu editMenu = new JMenu("༭");
-        editMenu.setMnemonic('E');
-
-        JMenuItem undoItem = new JMenuItem("");
-        JMenuItem clearItem = new JMenuItem("");
-
-        undoItem.addActionListener(e -> drawingPanel.undo());
-        clearItem.addActionListener(e -> drawingPanel.clearAll());
-
-        editMenu.add(undoItem);
-        editMenu.add(clearItem);
-
-        fillItem = new JCheckBoxMenuItem("ʵ");
-        fillItem.setState(false);
-        fillItem.addItemListener(e -> {
-            boolean filled = e.getStateChange() == ItemEvent.SELECTED;
-            drawingPanel.setFilled(filled);
-        });
-        editMenu.addSeparator();
-        editMenu.add(fillItem);
-
-        JMenu helpMenu = new JMenu("");
-        helpMenu.setMnemonic('H');
-        JMenuItem aboutItem = new JMenuItem("");
-        aboutItem.addActionListener(e ->
-            JOptionPane.showMessageDialog(this, "ͼ v1.0\nʹ Java Swing ", "", JOptionPane.INFORMATION_MESSAGE)
-        );
-        helpMenu.add(aboutItem);
-
-        menuBar.add(fileMenu);
-        menuBar.add(editMenu);
-        menuBar.add(Box.createHorizontalGlue());
-        menuBar.add(helpMenu);
-
-        setJMenuBar(menuBar);
-    }
-
-    private void initToolBar() {
-        JToolBar toolBar = new JToolBar();
-        toolBar.setFloatable(false);
-
-        JButton btnLine = new JButton("ֱ");
-        JButton btnRect = new JButton("");
-        JButton btnOval = new JButton("Բ");
-        JButton btnPolygon = new JButton("");
-        JButton btnClear = new JButton("");
-
-        btnLine.addActionListener(e -> {
-            drawingPanel.setDrawType("line");
-            statusLabel.setText(" - ǰ: ֱ");
-        });
-        btnRect.addActionListener(e -> {
-            drawingPanel.setDrawType("rect");
-            statusLabel.setText(" - ǰ: ");
-        });
-        btnOval.addActionListener(e -> {
-            drawingPanel.setDrawType("oval");
-            statusLabel.setText(" - ǰ: Բ");
-        });
-        btnPolygon.addActionListener(e -> {
-            drawingPanel.setDrawType("polygon");
-            statusLabel.setText(" - ǰ: ΣӶ㣩");
-        });
-        btnClear.addActionListener(e -> {
-            drawingPanel.clearAll();
-            statusLabel.setText("");
-        });
-
-        toolBar.add(btnLine);
-        toolBar.add(btnRect);
-        toolBar.add(btnOval);
-        toolBar.add(btnPolygon);
-        toolBar.addSeparator();
-        toolBar.add(btnClear);
-
-        add(toolBar, BorderLayout.NORTH);
-    }
-
-    private void initDrawingPanel() {
-        drawingPanel = new DrawingPanel();
-        add(drawingPanel, BorderLayout.CENTER);
-
-        statusLabel = new JLabel(" - ǰ: ֱ");
-        statusLabel.setBorder(BorderFactory.createLoweredBevelBorder());
-        add(statusLabel, BorderLayout.SOUTH);
-    }
-
-    public static void main(String[] args) {
-        EventQueue.invokeLater(() -> {
-            try {
-                UIManager.setLookAndFeel(UIManager.getLookAndFeel());
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
-            new MainFrame();
-        });
-    }
-}
-
+package com.outprogram.ui;
+
+import java.awt.*;
+import java.awt.event.*;
+import java.io.File;
+import java.util.concurrent.ExecutionException;
+import javax.swing.*;
+
+
+
+public class MainFrame extends JFrame {
+    private DrawingPanel drawingPanel;
+    private JLabel statusLabel;
+    private JCheckBoxMenuItem fillItem;
+
+    public MainFrame() {
+        initUI();
+    }
+
+    private void initUI() {
+        setTitle("绘图程序 v1.0");
+        setSize(800, 600);
+        setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        setLocationRelativeTo(null);
+        setLayout(new BorderLayout());
+
+        initMenuBar();
+        initToolBar();
+        initDrawingPanel();
+        initJournal();
+
+        setVisible(true);
+    }
+
+    private void initMenuBar() {
+        JMenuBar menuBar = new JMenuBar();
+
+        JMenu fileMenu = new JMenu("文件");
+        fileMenu.setMnemonic('F');
+
+        JMenuItem openItem = new JMenuItem("打开");
+        JMenuItem saveItem = new JMenuItem("保存");
+        JMenuItem saveDocItem = new JMenuItem("保存为矢量文档");
+        JMenuItem exitItem = new JMenuItem("退出");
+
+        exitItem.addActionListener(e -> {
+            drawingPanel.closeJournal();
+            System.exit(0);
+        });
+
+        saveItem.addActionListener(e -> {
+            JFileChooser chooser = new JFileChooser();
+            chooser.setDialogTitle("保存绘图");
+            chooser.setSelectedFile(new File("drawing.png"));
+            int result = chooser.showSaveDialog(MainFrame.this);
+            if (result == JFileChooser.APPROVE_OPTION) {
+                File file = chooser.getSelectedFile();
+                // 扩展名为 .svg 或 .pdf 时导出矢量图，为 .qoi 时导出 QOI，其余按 PNG 保存
+                String name = file.getName().toLowerCase();
+                if (!name.endsWith(".png") && !name.endsWith(".qoi") && !VectorExporter.supports(file)) {
+                    file = new File(file.getAbsolutePath() + ".png");
+                }
+                saveInBackground(file);
+            }
+        });
+
+        openItem.addActionListener(e -> {
+            JFileChooser chooser = new JFileChooser();
+            chooser.setDialogTitle("打开绘图");
+            if (chooser.showOpenDialog(MainFrame.this) == JFileChooser.APPROVE_OPTION) {
+                if (drawingPanel.openDocument(chooser.getSelectedFile())) {
+                    statusLabel.setText("已打开: " + chooser.getSelectedFile().getName());
+                } else {
+                    JOptionPane.showMessageDialog(this, "打开失败！", "错误", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        });
+
+        saveDocItem.addActionListener(e -> {
+            JFileChooser chooser = new JFileChooser();
+            chooser.setDialogTitle("保存矢量文档");
+            chooser.setSelectedFile(new File("drawing" + VectorFormat.EXTENSION));
+            if (chooser.showSaveDialog(MainFrame.this) == JFileChooser.APPROVE_OPTION) {
+                File file = chooser.getSelectedFile();
+                if (!file.getName().toLowerCase().endsWith(VectorFormat.EXTENSION)) {
+                    file = new File(file.getAbsolutePath() + VectorFormat.EXTENSION);
+                }
+                if (drawingPanel.saveDocument(file)) {
+                    statusLabel.setText("已保存: " + file.getName());
+                } else {
+                    JOptionPane.showMessageDialog(this, "保存失败！", "错误", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        });
+
+        fileMenu.add(openItem);
+        fileMenu.add(saveItem);
+        fileMenu.add(saveDocItem);
+        fileMenu.addSeparator();
+        fileMenu.add(exitItem);
+
+        JMenu editMenu = new JMenu("编辑");
+        editMenu.setMnemonic('E');
+
+        JMenuItem undoItem = new JMenuItem("撤销");
+        JMenuItem redoItem = new JMenuItem("重做");
+        JMenuItem clearItem = new JMenuItem("清除画布");
+
+        undoItem.addActionListener(e -> drawingPanel.undo());
+        redoItem.addActionListener(e -> drawingPanel.redo());
+        clearItem.addActionListener(e -> drawingPanel.clearAll());
+
+        editMenu.add(undoItem);
+        editMenu.add(redoItem);
+        editMenu.add(clearItem);
+
+        fillItem = new JCheckBoxMenuItem("实心填充");
+        fillItem.setState(false);
+        fillItem.addItemListener(e -> {
+            boolean filled = e.getStateChange() == ItemEvent.SELECTED;
+            drawingPanel.setFilled(filled);
+        });
+        JCheckBoxMenuItem detailItem = new JCheckBoxMenuItem("简化细节");
+        detailItem.addItemListener(e -> drawingPanel.setReducedDetail(e.getStateChange() == ItemEvent.SELECTED));
+        editMenu.addSeparator();
+        editMenu.add(fillItem);
+        editMenu.add(detailItem);
+
+        JMenu viewMenu = new JMenu("视图");
+        viewMenu.setMnemonic('V');
+        JMenuItem zoomInItem = new JMenuItem("放大");
+        JMenuItem zoomOutItem = new JMenuItem("缩小");
+        JMenuItem resetViewItem = new JMenuItem("实际大小");
+        zoomInItem.addActionListener(e -> drawingPanel.zoomIn());
+        zoomOutItem.addActionListener(e -> drawingPanel.zoomOut());
+        resetViewItem.addActionListener(e -> drawingPanel.resetView());
+        viewMenu.add(zoomInItem);
+        viewMenu.add(zoomOutItem);
+        viewMenu.add(resetViewItem);
+        JCheckBoxMenuItem backgroundItem = new JCheckBoxMenuItem("后台渲染");
+        backgroundItem.addItemListener(e ->
+                drawingPanel.setBackgroundRendering(e.getStateChange() == ItemEvent.SELECTED));
+        JCheckBoxMenuItem overlayItem = new JCheckBoxMenuItem("性能浮层");
+        overlayItem.addItemListener(e ->
+                drawingPanel.setMetricsOverlayVisible(e.getStateChange() == ItemEvent.SELECTED));
+        viewMenu.addSeparator();
+        viewMenu.add(backgroundItem);
+        viewMenu.add(overlayItem);
+
+        JMenu helpMenu = new JMenu("帮助");
+        helpMenu.setMnemonic('H');
+        JMenuItem aboutItem = new JMenuItem("关于");
+        aboutItem.addActionListener(e ->
+            JOptionPane.showMessageDialog(this, "绘图程序 v1.0\n使用 Java Swing 开发", "关于", JOptionPane.INFORMATION_MESSAGE)
+        );
+        helpMenu.add(aboutItem);
+
+        menuBar.add(fileMenu);
+        menuBar.add(editMenu);
+        menuBar.add(viewMenu);
+        menuBar.add(Box.createHorizontalGlue());
+        menuBar.add(helpMenu);
+
+        setJMenuBar(menuBar);
+    }
+
+    // 保存在后台进行，期间可以继续绘图，也可以在进度框中取消
+    private void saveInBackground(File file) {
+        SwingWorker<Boolean, Void> worker = drawingPanel.saveImageAsync(file);
+        if (worker == null) {
+            JOptionPane.showMessageDialog(this, "保存失败！", "错误", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        ProgressMonitor monitor = new ProgressMonitor(this, "正在保存图像...", file.getName(), 0, 100);
+        statusLabel.setText("正在保存: " + file.getName());
+        // 编码阶段可能很久没有进度事件，取消按钮靠定时轮询
+        Timer cancelPoll = new Timer(200, null);
+        cancelPoll.addActionListener(e -> {
+            if (worker.isDone()) {
+                cancelPoll.stop();
+            } else if (monitor.isCanceled()) {
+                worker.cancel(true);
+            }
+        });
+        cancelPoll.start();
+        worker.addPropertyChangeListener(evt -> {
+            if ("progress".equals(evt.getPropertyName())) {
+                monitor.setProgress((Integer) evt.getNewValue());
+            } else if (worker.isDone() && "state".equals(evt.getPropertyName())) {
+                cancelPoll.stop();
+                monitor.close();
+                if (worker.isCancelled()) {
+                    statusLabel.setText("保存已取消");
+                    return;
+                }
+                try {
+                    worker.get();
+                    statusLabel.setText("已保存: " + file.getName());
+                    JOptionPane.showMessageDialog(this, "图像已保存！", "成功", JOptionPane.INFORMATION_MESSAGE);
+                } catch (InterruptedException | ExecutionException ex) {
+                    ex.printStackTrace();
+                    statusLabel.setText("保存失败");
+                    JOptionPane.showMessageDialog(this, "保存失败！", "错误", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        });
+    }
+
+    private void initToolBar() {
+        JToolBar toolBar = new JToolBar();
+        toolBar.setFloatable(false);
+
+        JButton btnLine = new JButton("直线");
+        JButton btnRect = new JButton("矩形");
+        JButton btnOval = new JButton("椭圆");
+        JButton btnPolygon = new JButton("多边形");
+        JButton btnPencil = new JButton("铅笔");
+        JButton btnClear = new JButton("清除");
+
+        btnLine.addActionListener(e -> {
+            drawingPanel.setDrawType("line");
+            statusLabel.setText("就绪 - 当前工具: 直线");
+        });
+        btnRect.addActionListener(e -> {
+            drawingPanel.setDrawType("rect");
+            statusLabel.setText("就绪 - 当前工具: 矩形");
+        });
+        btnOval.addActionListener(e -> {
+            drawingPanel.setDrawType("oval");
+            statusLabel.setText("就绪 - 当前工具: 椭圆");
+        });
+        btnPolygon.addActionListener(e -> {
+            drawingPanel.setDrawType("polygon");
+            statusLabel.setText("就绪 - 当前工具: 多边形（点击添加顶点）");
+        });
+        btnPencil.addActionListener(e -> {
+            drawingPanel.setDrawType("pencil");
+            statusLabel.setText("就绪 - 当前工具: 铅笔（按住拖动）");
+        });
+        btnClear.addActionListener(e -> {
+            drawingPanel.clearAll();
+            statusLabel.setText("画布已清除");
+        });
+
+        toolBar.add(btnLine);
+        toolBar.add(btnRect);
+        toolBar.add(btnOval);
+        toolBar.add(btnPolygon);
+        toolBar.add(btnPencil);
+        toolBar.addSeparator();
+        toolBar.add(btnClear);
+
+        add(toolBar, BorderLayout.NORTH);
+    }
+
+    private void initDrawingPanel() {
+        drawingPanel = new DrawingPanel();
+        add(drawingPanel, BorderLayout.CENTER);
+
+        statusLabel = new JLabel("就绪 - 当前工具: 直线");
+        statusLabel.setBorder(BorderFactory.createLoweredBevelBorder());
+        add(statusLabel, BorderLayout.SOUTH);
+    }
+
+    // 自动保存：启动时恢复上次留下的内容，关闭窗口前把日志写完
+    private void initJournal() {
+        File dir = new File(System.getProperty("user.home"), ".drawing-autosave");
+        if (drawingPanel.openJournal(dir) && drawingPanel.getShapeCount() > 0) {
+            statusLabel.setText("已恢复上次的绘图（" + drawingPanel.getShapeCount() + " 个图形）");
+        }
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                drawingPanel.closeJournal();
+            }
+        });
+    }
+
+    public static void main(String[] args) {
+        EventQueue.invokeLater(() -> {
+            try {
+                UIManager.setLookAndFeel(UIManager.getLookAndFeel());
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+            new MainFrame();
+        });
+    }
+}
+
@@ -0,0 +1,172 @@
+package com.outprogram.ui;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// 内存映射打开的 .drw 文档：常驻内存的只有块索引，图形按块在需要时才解码
+// 解码结果放在容量有限的 LRU 缓存里，其余交给操作系统的页缓存
+final class MappedDocument {
+    private static final int DEFAULT_CACHED_BLOCKS = 64;
+
+    private final MappedByteBuffer data;
+    private final long[] blockOffsets;
+    private final int[] blockSizes;
+    private final int[] blockBounds;
+    private final int size;
+    private final Map<Integer, ShapeStore> cache;
+
+    private MappedDocument(MappedByteBuffer data, long[] blockOffsets, int[] blockSizes, int[] blockBounds,
+                           int cachedBlocks) {
+        this.data = data;
+        this.blockOffsets = blockOffsets;
+        this.blockSizes = blockSizes;
+        this.blockBounds = blockBounds;
+        int total = 0;
+        for (int n : blockSizes) total += n;
+        this.size = total;
+        this.cache = new LinkedHashMap<Integer, ShapeStore>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, ShapeStore> eldest) {
+                return size() > cachedBlocks;
+            }
+        };
+    }
+
+    // 打开带块索引的文档；旧版本（没有块索引）或超过 2GB 的文件返回 null，由调用方整体读入
+    static MappedDocument open(File file) throws IOException {
+        return open(file, DEFAULT_CACHED_BLOCKS);
+    }
+
+    static MappedDocument open(File file, int cachedBlocks) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long length = channel.size();
+            if (length > Integer.MAX_VALUE || length < 5 + VectorFormat.TAIL_SIZE) return null;
+            MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            if (VectorFormat.readHeader(data.duplicate(), file) < 2) return null;
+
+            ByteBuffer tail = data.duplicate();
+            tail.position((int) length - VectorFormat.TAIL_SIZE);
+            long indexOffset = tail.getLong();
+            int blocks = tail.getInt();
+            for (byte b : VectorFormat.INDEX_MAGIC) {
+                if (tail.get() != b) throw new IOException("Corrupt document: missing block index in " + file);
+            }
+            if (indexOffset < 0 || blocks < 0
+                    || indexOffset + (long) blocks * VectorFormat.INDEX_ENTRY_SIZE + VectorFormat.TAIL_SIZE != length) {
+                throw new IOException("Corrupt document: bad block index in " + file);
+            }
+
+            ByteBuffer index = data.duplicate();
+            index.position((int) indexOffset);
+            long[] offsets = new long[blocks];
+            int[] sizes = new int[blocks];
+            int[] bounds = new int[blocks * 4];
+            for (int b = 0; b < blocks; b++) {
+                offsets[b] = index.getLong();
+                sizes[b] = index.getInt();
+                for (int k = 0; k < 4; k++) {
+                    bounds[b * 4 + k] = index.getInt();
+                }
+                if (offsets[b] < VectorFormat.MAGIC.length + 1 || offsets[b] >= indexOffset
+                        || sizes[b] <= 0 || sizes[b] > VectorFormat.BLOCK_SIZE) {
+                    throw new IOException("Corrupt document: bad block index in " + file);
+                }
+            }
+            return new MappedDocument(data, offsets, sizes, bounds, cachedBlocks);
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    int blockCount() {
+        return blockSizes.length;
+    }
+
+    // 块索引与已解码块缓存占用的堆内存（估算），映射的文件内容不计在内
+    long footprintBytes() {
+        long bytes = blockOffsets.length * (8L + 4 + 16);
+        synchronized (cache) {
+            for (ShapeStore block : cache.values()) {
+                bytes += block.footprintBytes();
+            }
+        }
+        return bytes;
+    }
+
+    // 全部图形的包围盒，直接由块索引得到；空文档返回 null
+    Rectangle getBounds() {
+        Rectangle bounds = null;
+        for (int b = 0; b < blockSizes.length; b++) {
+            if (blockSizes[b] == 0) continue;
+            Rectangle r = new Rectangle(blockBounds[b * 4], blockBounds[b * 4 + 1],
+                    blockBounds[b * 4 + 2] - blockBounds[b * 4] + 1, blockBounds[b * 4 + 3] - blockBounds[b * 4 + 1] + 1);
+            bounds = bounds == null ? r : bounds.union(r);
+        }
+        return bounds;
+    }
+
+    boolean blockIntersects(int b, Rectangle area) {
+        return blockBounds[b * 4 + 2] >= area.x && blockBounds[b * 4] < area.x + area.width
+                && blockBounds[b * 4 + 3] >= area.y && blockBounds[b * 4 + 1] < area.y + area.height;
+    }
+
+    // 经过缓存取得解码后的块，可在多个线程中调用
+    ShapeStore block(int b) throws IOException {
+        synchronized (cache) {
+            ShapeStore store = cache.get(b);
+            if (store != null) return store;
+        }
+        ShapeStore store = readBlock(b);
+        synchronized (cache) {
+            cache.put(b, store);
+        }
+        return store;
+    }
+
+    // 不经过缓存直接解码，用于顺序遍历整篇文档（另存）时不挤掉缓存
+    ShapeStore readBlock(int b) throws IOException {
+        ByteBuffer buffer = data.duplicate();
+        buffer.position((int) blockOffsets[b]);
+        return VectorFormat.decodeBlock(buffer, blockSizes[b]);
+    }
+
+    // 只解码与裁剪区相交的块
+    void paint(Graphics2D g2d) {
+        paint(g2d, false);
+    }
+
+    void paint(Graphics2D g2d, boolean reduced) {
+        Rectangle clip = g2d.getClipBounds();
+        if (clip != null) {
+            int slack = ShapeRenderer.cullSlack(g2d);
+            clip.grow(slack, slack);
+        }
+        int culled = 0;
+        for (int b = 0; b < blockSizes.length; b++) {
+            if (clip != null && !blockIntersects(b, clip)) {
+                culled += blockSizes[b];
+                continue;
+            }
+            try {
+                ShapeRenderer.paint(g2d, block(b), reduced);
+            } catch (IOException e) {
+                // 文件在打开后被截断或损坏，跳过该块，其余部分照常显示
+                e.printStackTrace();
+            }
+        }
+        RenderMetrics metrics = RenderMetrics.get();
+        if (culled > 0 && metrics.isEnabled()) {
+            metrics.shapesPainted(0, culled);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.outprogram.ui;
+
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+// 流式写出单页 PDF：页面内容是一个边写边压缩的内容流，长度事先未知，用间接对象在流之后给出
+// 内容流中直接使用世界坐标，由页面开头的 cm 变换翻转 y 轴并平移到页面原点
+class PdfStreamWriter extends VectorStreamWriter {
+    // PDF 页面边长的上限（单位为 1/72 英寸），超出时整体缩小
+    private static final int MAX_PAGE_SIZE = 14400;
+    // 四段贝塞尔曲线近似椭圆时控制点的比例
+    private static final double KAPPA = 0.5522847498;
+    private static final int OBJECTS = 5;
+
+    private final CountingOutputStream file;
+    private final long[] offsets = new long[OBJECTS + 1];
+    // 内容流是大量重复的短文本，最快一档的压缩率只比默认档差一成多，速度快三倍
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private final DeflaterOutputStream content;
+    private final long contentStart;
+    // 当前颜色对应的类型码，相邻图形颜色相同时不再输出颜色
+    private byte current = -1;
+
+    PdfStreamWriter(OutputStream out, Rectangle bounds, Color background) throws IOException {
+        this(new CountingOutputStream(out), bounds, background);
+    }
+
+    private PdfStreamWriter(CountingOutputStream out, Rectangle bounds, Color background) throws IOException {
+        super(out, bounds);
+        file = out;
+        double scale = Math.min(1, (double) MAX_PAGE_SIZE / Math.max(bounds.width, bounds.height));
+        double width = bounds.width * scale;
+        double height = bounds.height * scale;
+
+        print("%PDF-1.4\n%âãÏÓ\n");
+        beginObject(1);
+        print("<< /Type /Catalog /Pages 2 0 R >>\nendobj\n");
+        beginObject(2);
+        print("<< /Type /Pages /Kids [3 0 R] /Count 1 >>\nendobj\n");
+        beginObject(3);
+        print("<< /Type /Page /Parent 2 0 R /MediaBox [0 0 ").print(width).print(' ').print(height)
+                .print("] /Contents 4 0 R /Resources << >> >>\nendobj\n");
+        beginObject(4);
+        print("<< /Length 5 0 R /Filter /FlateDecode >>\nstream\n");
+        flushBuffer();
+        contentStart = file.count;
+        content = new DeflaterOutputStream(file, deflater, 1 << 16);
+        switchOutput(content);
+
+        print(scale).print(" 0 0 ").print(-scale).print(' ').print(-bounds.x * scale).print(' ')
+                .print(height + bounds.y * scale).print(" cm\n");
+        printColor(background).print("rg\n");
+        print(bounds.x).print(' ').print(bounds.y).print(' ').print(bounds.width).print(' ').print(bounds.height)
+                .print(" re f\n1 w\n");
+    }
+
+    @Override
+    void writeShape(ShapeStore store, int id) throws IOException {
+        byte type = store.type(id);
+        if (type != current) {
+            Color color = ShapeRenderer.color(type);
+            printColor(color).print("RG ");
+            printColor(color).print("rg\n");
+            current = type;
+        }
+        int ax = store.x1(id), ay = store.y1(id), bx = store.x2(id), by = store.y2(id);
+        int x = Math.min(ax, bx), y = Math.min(ay, by), w = Math.abs(bx - ax), h = Math.abs(by - ay);
+        boolean filled = store.isFilled(id);
+        switch (type) {
+            case ShapeStore.LINE:
+                print(ax).print(' ').print(ay).print(" m ").print(bx).print(' ').print(by).print(" l S\n");
+                break;
+            case ShapeStore.RECT:
+                print(x).print(' ').print(y).print(' ').print(w).print(' ').print(h).print(filled ? " re f\n" : " re S\n");
+                break;
+            case ShapeStore.OVAL:
+                printEllipse(x + w / 2.0, y + h / 2.0, w / 2.0, h / 2.0);
+                print(filled ? "f\n" : "S\n");
+                break;
+            case ShapeStore.POLYGON:
+                printPath(store, id);
+                // 与 java.awt.Polygon 一样按奇偶规则填充
+                print(filled ? "h f*\n" : "h S\n");
+                break;
+            case ShapeStore.STROKE:
+                if (store.vertexCount(id) == 1) {
+                    print(ax).print(' ').print(ay).print(" 1 1 re f\n");
+                } else {
+                    printPath(store, id);
+                    print("S\n");
+                }
+                break;
+        }
+    }
+
+    private void printPath(ShapeStore store, int id) throws IOException {
+        int n = store.vertexCount(id);
+        for (int i = 0; i < n; i++) {
+            print(store.vertexX(id, i)).print(' ').print(store.vertexY(id, i)).print(i == 0 ? " m " : " l ");
+        }
+    }
+
+    private void printEllipse(double cx, double cy, double rx, double ry) throws IOException {
+        double kx = rx * KAPPA, ky = ry * KAPPA;
+        print(cx + rx).print(' ').print(cy).print(" m ");
+        curve(cx + rx, cy + ky, cx + kx, cy + ry, cx, cy + ry);
+        curve(cx - kx, cy + ry, cx - rx, cy + ky, cx - rx, cy);
+        curve(cx - rx, cy - ky, cx - kx, cy - ry, cx, cy - ry);
+        curve(cx + kx, cy - ry, cx + rx, cy - ky, cx + rx, cy);
+    }
+
+    private void curve(double x1, double y1, double x2, double y2, double x3, double y3) throws IOException {
+        print(x1).print(' ').print(y1).print(' ').print(x2).print(' ').print(y2).print(' ')
+                .print(x3).print(' ').print(y3).print(" c ");
+    }
+
+    private VectorStreamWriter printColor(Color color) throws IOException {
+        return print(color.getRed() / 255.0).print(' ').print(color.getGreen() / 255.0).print(' ')
+                .print(color.getBlue() / 255.0).print(' ');
+    }
+
+    @Override
+    protected void finish() throws IOException {
+        flushBuffer();
+        content.finish();
+        switchOutput(file);
+        long length = file.count - contentStart;
+        print("\nendstream\nendobj\n");
+        beginObject(5);
+        print(length).print("\nendobj\n");
+        flushBuffer();
+        long xref = file.count;
+        print("xref\n0 ").print(OBJECTS + 1).print("\n0000000000 65535 f \n");
+        for (int i = 1; i <= OBJECTS; i++) {
+            String offset = Long.toString(offsets[i]);
+            for (int k = offset.length(); k < 10; k++) print('0');
+            print(offset).print(" 00000 n \n");
+        }
+        print("trailer\n<< /Size ").print(OBJECTS + 1).print(" /Root 1 0 R >>\nstartxref\n").print(xref)
+                .print("\n%%EOF\n");
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            super.close();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private void beginObject(int number) throws IOException {
+        flushBuffer();
+        offsets[number] = file.count;
+        print(number).print(" 0 obj\n");
+    }
+
+    // 记录已写出的字节数，交叉引用表要用对象的偏移
+    private static class CountingOutputStream extends FilterOutputStream {
+        long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.outprogram.ui;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+// 按条带流式写出 24 位 RGB 的 PNG，整张图不必驻留内存
+// 各条带在工作线程上各自过滤、压缩成独立的 deflate 片段，以同步刷新结尾（最后一段以结束块结尾），按顺序拼成一个 zlib 流
+// zlib 头和 Adler-32 尾各占一个小 IDAT 块，Adler-32 由各段的值合并得到，压缩因此可以随核数并行
+class PngStreamWriter implements RasterEncoder {
+    private static final byte[] SIGNATURE = {(byte) 137, 'P', 'N', 'G', '\r', '\n', 26, '\n'};
+    private static final int FILTER_SUB = 1;
+    private static final int ADLER_BASE = 65521;
+
+    private final FileChannel channel;
+    private final int width;
+    private final int height;
+    private final int level;
+    private int rowsWritten;
+    private int adler = 1;
+
+    PngStreamWriter(FileChannel channel, int width, int height) throws IOException {
+        this(channel, width, height, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    // level 为 Deflater 的压缩级别，0 为不压缩
+    PngStreamWriter(FileChannel channel, int width, int height, int level) throws IOException {
+        this.channel = channel;
+        this.width = width;
+        this.height = height;
+        this.level = level;
+
+        RasterEncoder.writeFully(channel, ByteBuffer.wrap(SIGNATURE));
+        ByteBuffer header = ByteBuffer.allocate(13);
+        header.putInt(width).putInt(height);
+        header.put((byte) 8);  // 位深
+        header.put((byte) 2);  // 颜色类型：RGB
+        header.put((byte) 0);  // 压缩方法
+        header.put((byte) 0);  // 过滤方法
+        header.put((byte) 0);  // 不隔行
+        RasterEncoder.writeFully(channel, chunk("IHDR", header.array(), 13));
+        RasterEncoder.writeFully(channel, chunk("IDAT", zlibHeader(level), 2));
+    }
+
+    @Override
+    public Strip encode(int[] rgb, int scanline, int rows, boolean last) {
+        int rowBytes = 1 + width * 3;
+        byte[] raw = new byte[rows * rowBytes];
+        for (int r = 0; r < rows; r++) {
+            int base = r * scanline;
+            int i = r * rowBytes;
+            raw[i++] = FILTER_SUB;
+            int prev = 0;
+            for (int x = 0; x < width; x++, i += 3) {
+                int pixel = rgb[base + x];
+                raw[i] = (byte) ((pixel >> 16) - (prev >> 16));
+                raw[i + 1] = (byte) ((pixel >> 8) - (prev >> 8));
+                raw[i + 2] = (byte) (pixel - prev);
+                prev = pixel;
+            }
+        }
+        Adler32 checksum = new Adler32();
+        checksum.update(raw);
+
+        Deflater deflater = new Deflater(level, true);
+        try {
+            deflater.setInput(raw);
+            byte[] out = new byte[raw.length / 2 + 64];
+            int length = 0;
+            if (last) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    if (length == out.length) out = Arrays.copyOf(out, out.length * 2);
+                    length += deflater.deflate(out, length, out.length - length);
+                }
+            } else {
+                // 同步刷新：输出填满了缓冲区时还可能有剩余，要继续调用
+                while (true) {
+                    int n = deflater.deflate(out, length, out.length - length, Deflater.SYNC_FLUSH);
+                    length += n;
+                    if (length < out.length) break;
+                    out = Arrays.copyOf(out, out.length * 2);
+                }
+            }
+            return new Strip(chunk("IDAT", out, length), (int) checksum.getValue(), raw.length);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    @Override
+    public void write(Strip strip) throws IOException {
+        int rows = (int) (strip.rawLength / (1 + width * 3));
+        if (rowsWritten + rows > height) {
+            throw new IOException("Too many rows: " + (rowsWritten + rows) + " > " + height);
+        }
+        RasterEncoder.writeFully(channel, strip.data);
+        adler = combineAdler(adler, strip.checksum, strip.rawLength);
+        rowsWritten += rows;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (rowsWritten != height) {
+            throw new IOException("Incomplete image: " + rowsWritten + " of " + height + " rows written");
+        }
+        byte[] trailer = ByteBuffer.allocate(4).putInt(adler).array();
+        RasterEncoder.writeFully(channel, chunk("IDAT", trailer, 4));
+        RasterEncoder.writeFully(channel, chunk("IEND", new byte[0], 0));
+    }
+
+    private static ByteBuffer chunk(String type, byte[] data, int length) {
+        byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data, 0, length);
+        ByteBuffer chunk = ByteBuffer.allocate(12 + length);
+        chunk.putInt(length).put(typeBytes).put(data, 0, length).putInt((int) crc.getValue());
+        chunk.flip();
+        return chunk;
+    }
+
+    // CMF 固定为 deflate、32K 窗口；FLG 中的 FLEVEL 只是提示，FCHECK 使两字节合起来能被 31 整除
+    private static byte[] zlibHeader(int level) {
+        int cmf = 0x78;
+        int flevel = level == Deflater.DEFAULT_COMPRESSION || level == 6 ? 2 : level < 2 ? 0 : level < 6 ? 1 : 3;
+        int flg = flevel << 6;
+        flg += 31 - (cmf * 256 + flg) % 31;
+        return new byte[]{(byte) cmf, (byte) flg};
+    }
+
+    // 已知前后两段各自的 Adler-32，求拼接后的值（同 zlib 的 adler32_combine）
+    static int combineAdler(int adler1, int adler2, long length2) {
+        long rem = length2 % ADLER_BASE;
+        long sum1 = adler1 & 0xffff;
+        long sum2 = rem * sum1 % ADLER_BASE;
+        sum1 += (adler2 & 0xffff) + ADLER_BASE - 1;
+        sum2 += ((adler1 >>> 16) & 0xffff) + ((adler2 >>> 16) & 0xffff) + ADLER_BASE - rem;
+        if (sum1 >= ADLER_BASE) sum1 -= ADLER_BASE;
+        if (sum1 >= ADLER_BASE) sum1 -= ADLER_BASE;
+        if (sum2 >= (ADLER_BASE << 1)) sum2 -= (ADLER_BASE << 1);
+        if (sum2 >= ADLER_BASE) sum2 -= ADLER_BASE;
+        return (int) (sum1 | (sum2 << 16));
+    }
+}
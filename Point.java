@@ -1,8 +1,8 @@
-package com.outprogram.ui;
-
-public class Point {
-
-	public int y;
-	public int x;
-
-}
+package com.outprogram.ui;
+
+public class Point {
+
+	public int y;
+	public int x;
+
+}
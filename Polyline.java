@@ -0,0 +1,60 @@
+package com.outprogram.ui;
+
+import java.awt.Polygon;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.PathIterator;
+
+// 不闭合的 Polygon：手绘线提交时就建好，g2d.draw 直接画，省掉 drawPolyline 每次现建的 GeneralPath
+class Polyline extends Polygon {
+    Polyline(int[] xs, int[] ys, int n) {
+        super(xs, ys, n);
+    }
+
+    @Override
+    public PathIterator getPathIterator(AffineTransform at) {
+        return new OpenIterator(this, at);
+    }
+
+    // Polygon 的路径迭代器最后会加一段 SEG_CLOSE，这里只有 moveTo 和 lineTo
+    private static final class OpenIterator implements PathIterator {
+        private final Polygon polygon;
+        private final AffineTransform transform;
+        private int index;
+
+        OpenIterator(Polygon polygon, AffineTransform transform) {
+            this.polygon = polygon;
+            this.transform = transform;
+        }
+
+        @Override
+        public int getWindingRule() {
+            return WIND_NON_ZERO;
+        }
+
+        @Override
+        public boolean isDone() {
+            return index >= polygon.npoints;
+        }
+
+        @Override
+        public void next() {
+            index++;
+        }
+
+        @Override
+        public int currentSegment(float[] coords) {
+            coords[0] = polygon.xpoints[index];
+            coords[1] = polygon.ypoints[index];
+            if (transform != null) transform.transform(coords, 0, coords, 0, 1);
+            return index == 0 ? SEG_MOVETO : SEG_LINETO;
+        }
+
+        @Override
+        public int currentSegment(double[] coords) {
+            coords[0] = polygon.xpoints[index];
+            coords[1] = polygon.ypoints[index];
+            if (transform != null) transform.transform(coords, 0, coords, 0, 1);
+            return index == 0 ? SEG_MOVETO : SEG_LINETO;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.outprogram.ui;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+// 流式写出 QOI（Quite OK Image）：单遍查表编码，不做熵编码，比 PNG 快得多，适合作中间文件
+// 条带在工作线程上各自编码：每个条带的第一个像素写成完整的 RGB，索引表只引用本条带内写入过的项，游程不跨条带，
+// 拼起来仍是合法的 QOI 流，解码器不需要知道条带的存在
+class QoiStreamWriter implements RasterEncoder {
+    private static final byte[] MAGIC = {'q', 'o', 'i', 'f'};
+    private static final byte[] END = {0, 0, 0, 0, 0, 0, 0, 1};
+    private static final int OP_INDEX = 0x00;
+    private static final int OP_DIFF = 0x40;
+    private static final int OP_LUMA = 0x80;
+    private static final int OP_RUN = 0xc0;
+    private static final int OP_RGB = 0xfe;
+    private static final int MAX_RUN = 62;
+
+    private final FileChannel channel;
+    private final int width;
+    private final int height;
+    private int rowsWritten;
+
+    QoiStreamWriter(FileChannel channel, int width, int height) throws IOException {
+        this.channel = channel;
+        this.width = width;
+        this.height = height;
+        ByteBuffer header = ByteBuffer.allocate(14);
+        header.put(MAGIC).putInt(width).putInt(height);
+        header.put((byte) 3);  // RGB
+        header.put((byte) 0);  // sRGB
+        header.flip();
+        RasterEncoder.writeFully(channel, header);
+    }
+
+    @Override
+    public Strip encode(int[] rgb, int scanline, int rows, boolean last) {
+        // 最坏情况每个像素 4 字节
+        byte[] out = new byte[rows * width * 4];
+        int length = 0;
+        int[] index = new int[64];
+        // 本条带写入过的索引项
+        long valid = 0;
+        int prev = -1;
+        int run = 0;
+        for (int r = 0; r < rows; r++) {
+            int base = r * scanline;
+            for (int x = 0; x < width; x++) {
+                int pixel = rgb[base + x] & 0xffffff;
+                if (pixel == prev) {
+                    if (++run == MAX_RUN) {
+                        out[length++] = (byte) (OP_RUN | (run - 1));
+                        run = 0;
+                    }
+                    continue;
+                }
+                if (run > 0) {
+                    out[length++] = (byte) (OP_RUN | (run - 1));
+                    run = 0;
+                }
+                int red = pixel >> 16, green = (pixel >> 8) & 0xff, blue = pixel & 0xff;
+                // 不透明像素 alpha 为 255
+                int hash = (red * 3 + green * 5 + blue * 7 + 255 * 11) & 63;
+                if ((valid & (1L << hash)) != 0 && index[hash] == pixel) {
+                    out[length++] = (byte) (OP_INDEX | hash);
+                    prev = pixel;
+                    continue;
+                }
+                index[hash] = pixel;
+                valid |= 1L << hash;
+                if (prev >= 0) {
+                    int dr = (byte) (red - (prev >> 16));
+                    int dg = (byte) (green - ((prev >> 8) & 0xff));
+                    int db = (byte) (blue - (prev & 0xff));
+                    if (dr >= -2 && dr <= 1 && dg >= -2 && dg <= 1 && db >= -2 && db <= 1) {
+                        out[length++] = (byte) (OP_DIFF | (dr + 2) << 4 | (dg + 2) << 2 | (db + 2));
+                        prev = pixel;
+                        continue;
+                    }
+                    int drg = dr - dg, dbg = db - dg;
+                    if (dg >= -32 && dg <= 31 && drg >= -8 && drg <= 7 && dbg >= -8 && dbg <= 7) {
+                        out[length++] = (byte) (OP_LUMA | (dg + 32));
+                        out[length++] = (byte) ((drg + 8) << 4 | (dbg + 8));
+                        prev = pixel;
+                        continue;
+                    }
+                }
+                out[length++] = (byte) OP_RGB;
+                out[length++] = (byte) red;
+                out[length++] = (byte) green;
+                out[length++] = (byte) blue;
+                prev = pixel;
+            }
+        }
+        if (run > 0) {
+            out[length++] = (byte) (OP_RUN | (run - 1));
+        }
+        return new Strip(ByteBuffer.wrap(out, 0, length), 0, (long) rows * width);
+    }
+
+    @Override
+    public void write(Strip strip) throws IOException {
+        int rows = (int) (strip.rawLength / width);
+        if (rowsWritten + rows > height) {
+            throw new IOException("Too many rows: " + (rowsWritten + rows) + " > " + height);
+        }
+        RasterEncoder.writeFully(channel, strip.data);
+        rowsWritten += rows;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (rowsWritten != height) {
+            throw new IOException("Incomplete image: " + rowsWritten + " of " + height + " rows written");
+        }
+        RasterEncoder.writeFully(channel, ByteBuffer.wrap(END));
+    }
+}
@@ -0,0 +1,50 @@
+package com.outprogram.ui;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Locale;
+
+// 栅格导出的编码阶段：TiledExporter 在工作线程上并行调用 encode 编码各个条带，再在导出线程上按顺序 write
+// 文件头在构造时写出，文件尾在 close 时写出；通道由调用方打开和关闭
+interface RasterEncoder extends Closeable {
+    // 可被多个线程同时调用；rgb 中每行 width 个像素，共 rows 行，last 表示这是图像的最后一个条带
+    Strip encode(int[] rgb, int width, int rows, boolean last) throws IOException;
+
+    // 按条带顺序调用
+    void write(Strip strip) throws IOException;
+
+    interface Factory {
+        RasterEncoder open(FileChannel channel, int width, int height) throws IOException;
+    }
+
+    // 按扩展名选择编码器：.qoi 为 QOI，其余为按 level 压缩的 PNG
+    static Factory forFile(File file, int level) {
+        if (file.getName().toLowerCase(Locale.ROOT).endsWith(".qoi")) {
+            return QoiStreamWriter::new;
+        }
+        return (channel, width, height) -> new PngStreamWriter(channel, width, height, level);
+    }
+
+    static void writeFully(FileChannel channel, ByteBuffer data) throws IOException {
+        while (data.hasRemaining()) {
+            channel.write(data);
+        }
+    }
+
+    // 编码好的一个条带：可以直接写出的字节，以及顺序写出时合并校验值要用的信息
+    final class Strip {
+        final ByteBuffer data;
+        final int checksum;
+        // 条带编码前的字节数（PNG）或像素数（QOI）
+        final long rawLength;
+
+        Strip(ByteBuffer data, int checksum, long rawLength) {
+            this.data = data;
+            this.checksum = checksum;
+            this.rawLength = rawLength;
+        }
+    }
+}
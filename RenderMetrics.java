@@ -0,0 +1,275 @@
+package com.outprogram.ui;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+// 绘制相关的运行时统计，进程内只有一份；关闭时各处只多一次 volatile 读
+// 计数可能来自 EDT、后台渲染线程和导出线程，都用原子类型累加
+final class RenderMetrics implements RenderMetricsMBean {
+    private static final RenderMetrics INSTANCE = new RenderMetrics();
+    private static boolean registered;
+
+    private volatile boolean enabled;
+
+    private final Histogram historyPaint = new Histogram();
+    private final Histogram previewPaint = new Histogram();
+    private final LongAdder frames = new LongAdder();
+    private final LongAdder shapesDrawn = new LongAdder();
+    private final LongAdder shapesCulled = new LongAdder();
+    private final LongAdder tilesRendered = new LongAdder();
+    private final LongAdder backgroundFrames = new LongAdder();
+    private final LongAdder exports = new LongAdder();
+    private final LongAdder saves = new LongAdder();
+    private volatile long lastExportNanos;
+    private volatile long lastSaveNanos;
+
+    // 由最近创建的画布提供的即时数值
+    private volatile LongSupplier storeBytes = () -> 0;
+    private volatile LongSupplier tileBytes = () -> 0;
+    private volatile InputPacer pacer;
+
+    private RenderMetrics() {}
+
+    static RenderMetrics get() {
+        return INSTANCE;
+    }
+
+    // 注册到平台 MBeanServer，重复调用无副作用
+    static synchronized void register() {
+        if (registered) return;
+        registered = true;
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(
+                    new StandardMBean(INSTANCE, RenderMetricsMBean.class),
+                    new ObjectName("com.outprogram.ui:type=RenderMetrics"));
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+
+    void attach(LongSupplier storeBytes, LongSupplier tileBytes, InputPacer pacer) {
+        this.storeBytes = storeBytes;
+        this.tileBytes = tileBytes;
+        this.pacer = pacer;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    void framePainted(long historyNanos, long previewNanos) {
+        frames.increment();
+        historyPaint.add(historyNanos);
+        previewPaint.add(previewNanos);
+    }
+
+    void shapesPainted(int drawn, int culled) {
+        shapesDrawn.add(drawn);
+        shapesCulled.add(culled);
+    }
+
+    void tileRendered() {
+        tilesRendered.increment();
+    }
+
+    void backgroundFrameRendered() {
+        backgroundFrames.increment();
+    }
+
+    void exportFinished(long nanos) {
+        exports.increment();
+        lastExportNanos = nanos;
+    }
+
+    void saveFinished(long nanos) {
+        saves.increment();
+        lastSaveNanos = nanos;
+    }
+
+    @Override
+    public long getFrameCount() {
+        return frames.sum();
+    }
+
+    @Override
+    public double getHistoryPaintMeanMillis() {
+        return historyPaint.meanMillis();
+    }
+
+    @Override
+    public double getHistoryPaintP95Millis() {
+        return historyPaint.percentileMillis(0.95);
+    }
+
+    @Override
+    public String getHistoryPaintHistogram() {
+        return historyPaint.toString();
+    }
+
+    @Override
+    public double getPreviewPaintMeanMillis() {
+        return previewPaint.meanMillis();
+    }
+
+    @Override
+    public double getPreviewPaintP95Millis() {
+        return previewPaint.percentileMillis(0.95);
+    }
+
+    @Override
+    public String getPreviewPaintHistogram() {
+        return previewPaint.toString();
+    }
+
+    @Override
+    public long getShapesDrawn() {
+        return shapesDrawn.sum();
+    }
+
+    @Override
+    public long getShapesCulled() {
+        return shapesCulled.sum();
+    }
+
+    @Override
+    public long getTilesRendered() {
+        return tilesRendered.sum();
+    }
+
+    @Override
+    public long getBackgroundFrames() {
+        return backgroundFrames.sum();
+    }
+
+    @Override
+    public long getExportCount() {
+        return exports.sum();
+    }
+
+    @Override
+    public double getLastExportMillis() {
+        return lastExportNanos / 1e6;
+    }
+
+    @Override
+    public long getSaveCount() {
+        return saves.sum();
+    }
+
+    @Override
+    public double getLastSaveMillis() {
+        return lastSaveNanos / 1e6;
+    }
+
+    @Override
+    public long getShapeStoreBytes() {
+        return storeBytes.getAsLong();
+    }
+
+    @Override
+    public long getTileCacheBytes() {
+        return tileBytes.getAsLong();
+    }
+
+    @Override
+    public long getMotionEvents() {
+        InputPacer p = pacer;
+        return p == null ? 0 : p.getEventCount();
+    }
+
+    @Override
+    public long getDroppedMotionEvents() {
+        InputPacer p = pacer;
+        return p == null ? 0 : p.getDroppedCount();
+    }
+
+    @Override
+    public double getMeanInputLatencyMillis() {
+        InputPacer p = pacer;
+        return p == null ? 0 : p.getMeanLatencyMillis();
+    }
+
+    @Override
+    public void reset() {
+        historyPaint.reset();
+        previewPaint.reset();
+        frames.reset();
+        shapesDrawn.reset();
+        shapesCulled.reset();
+        tilesRendered.reset();
+        backgroundFrames.reset();
+        exports.reset();
+        saves.reset();
+        lastExportNanos = 0;
+        lastSaveNanos = 0;
+    }
+
+    // 按 2 的幂分桶的耗时直方图，第 i 个桶的上限为 2^i 毫秒，最后一个桶不设上限
+    static final class Histogram {
+        private static final int BUCKETS = 12;
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        private final LongAdder total = new LongAdder();
+
+        void add(long nanos) {
+            int bucket = 0;
+            while (bucket < BUCKETS - 1 && nanos > upperNanos(bucket)) bucket++;
+            counts.incrementAndGet(bucket);
+            total.add(nanos);
+        }
+
+        long count() {
+            long n = 0;
+            for (int i = 0; i < BUCKETS; i++) n += counts.get(i);
+            return n;
+        }
+
+        double meanMillis() {
+            long n = count();
+            return n == 0 ? 0 : total.sum() / 1e6 / n;
+        }
+
+        // 落在哪个桶就报告该桶的上限
+        double percentileMillis(double p) {
+            long n = count();
+            if (n == 0) return 0;
+            long rank = (long) Math.ceil(p * n);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts.get(i);
+                if (seen >= rank) return i == BUCKETS - 1 ? Double.POSITIVE_INFINITY : upperNanos(i) / 1e6;
+            }
+            return Double.POSITIVE_INFINITY;
+        }
+
+        void reset() {
+            for (int i = 0; i < BUCKETS; i++) counts.set(i, 0);
+            total.reset();
+        }
+
+        private static long upperNanos(int bucket) {
+            return 1_000_000L << bucket;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < BUCKETS; i++) {
+                if (sb.length() > 0) sb.append(' ');
+                sb.append(i == BUCKETS - 1 ? ">" : "<=").append(upperNanos(Math.min(i, BUCKETS - 2)) / 1_000_000)
+                        .append("ms:").append(counts.get(i));
+            }
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.outprogram.ui;
+
+// RenderMetrics 通过 JMX 公开的属性，名称为 com.outprogram.ui:type=RenderMetrics
+public interface RenderMetricsMBean {
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    long getFrameCount();
+
+    double getHistoryPaintMeanMillis();
+
+    double getHistoryPaintP95Millis();
+
+    String getHistoryPaintHistogram();
+
+    double getPreviewPaintMeanMillis();
+
+    double getPreviewPaintP95Millis();
+
+    String getPreviewPaintHistogram();
+
+    long getShapesDrawn();
+
+    long getShapesCulled();
+
+    long getTilesRendered();
+
+    long getBackgroundFrames();
+
+    long getExportCount();
+
+    double getLastExportMillis();
+
+    long getSaveCount();
+
+    double getLastSaveMillis();
+
+    long getShapeStoreBytes();
+
+    long getTileCacheBytes();
+
+    long getMotionEvents();
+
+    long getDroppedMotionEvents();
+
+    double getMeanInputLatencyMillis();
+
+    void reset();
+}
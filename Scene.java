@@ -0,0 +1,39 @@
+package com.outprogram.ui;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+
+// 某一时刻的完整画面：打开的映射文档（只读，可为 null）加上其后绘制的图形
+// 两部分都不会再被修改，可以交给后台线程绘制
+final class Scene {
+    final MappedDocument base;
+    final ShapeStore shapes;
+
+    Scene(MappedDocument base, ShapeStore shapes) {
+        this.base = base;
+        this.shapes = shapes;
+    }
+
+    void paint(Graphics2D g2d) {
+        paint(g2d, false);
+    }
+
+    void paint(Graphics2D g2d, boolean reduced) {
+        if (base != null) {
+            base.paint(g2d, reduced);
+        }
+        ShapeRenderer.paint(g2d, shapes, reduced);
+    }
+
+    // 画面内容的包围盒，没有图形时返回 null
+    Rectangle getBounds() {
+        Rectangle bounds = base == null ? null : base.getBounds();
+        Rectangle own = shapes.getBounds();
+        if (own == null) return bounds;
+        return bounds == null ? own : bounds.union(own);
+    }
+
+    int size() {
+        return (base == null ? 0 : base.size()) + shapes.size();
+    }
+}
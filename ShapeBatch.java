@@ -0,0 +1,68 @@
+package com.outprogram.ui;
+
+// 一批待添加的图形，由调用方在任意线程上填好后交给 DrawingPanel.addShapes 一次提交
+// 同一个实例不要在多个线程间共用；提交时内容被复制，之后可以继续使用或丢弃
+public final class ShapeBatch {
+    final ShapeStore store;
+
+    public ShapeBatch() {
+        this(1024);
+    }
+
+    public ShapeBatch(int capacity) {
+        store = new ShapeStore(capacity, false);
+    }
+
+    // type 为 "line"、"rect"、"oval"
+    public ShapeBatch add(String type, int x1, int y1, int x2, int y2, boolean filled) {
+        byte code = ShapeStore.typeCode(type);
+        if (ShapeStore.hasVertices(code)) throw new IllegalArgumentException("Use addPolygon/addStroke for " + type);
+        store.add(code, x1, y1, x2, y2, filled);
+        return this;
+    }
+
+    public ShapeBatch addPolygon(int[] xs, int[] ys, int n, boolean filled) {
+        checkVertexCount(ShapeStore.POLYGON, n);
+        store.addPolygon(xs, ys, n, filled);
+        return this;
+    }
+
+    public ShapeBatch addStroke(int[] xs, int[] ys, int n) {
+        checkVertexCount(ShapeStore.STROKE, n);
+        store.addStroke(xs, ys, n);
+        return this;
+    }
+
+    // 与上面几个方法做同样的检查：不合法的记录在调用线程上就抛出，不会带进文档、存档和日志
+    public ShapeBatch add(ShapeRecord record) {
+        byte code = ShapeStore.typeCode(record.type);
+        if (ShapeStore.hasVertices(code)) {
+            checkVertexCount(code, record.points == null ? 0 : record.points.size());
+        } else if (record.points != null) {
+            throw new IllegalArgumentException("Points are not allowed for " + record.type);
+        }
+        store.add(record);
+        return this;
+    }
+
+    public int size() {
+        return store.size();
+    }
+
+    public boolean isEmpty() {
+        return store.isEmpty();
+    }
+
+    public void clear() {
+        store.clear();
+    }
+
+    private static void checkVertexCount(byte type, int n) {
+        if (type == ShapeStore.POLYGON && n < 3) {
+            throw new IllegalArgumentException("Polygon needs at least 3 points: " + n);
+        }
+        if (type == ShapeStore.STROKE && n < 1) {
+            throw new IllegalArgumentException("Stroke needs at least 1 point: " + n);
+        }
+    }
+}
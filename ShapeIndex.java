@@ -0,0 +1,184 @@
+package com.outprogram.ui;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// 分层均匀网格空间索引：按矩形查询与命中测试，增删都是增量的
+// 每个图形放进能让它最多跨 2x2 个格子的最细一层，所以每个图形最多占 4 个格子
+// 仓库与它的快照共用同一个索引：只有仓库所在的线程写入，其他线程可以同时查询，按各自的图形数过滤结果
+class ShapeIndex {
+    private static final int BASE_CELL_SHIFT = 6;   // 最细一层格子 64 像素
+    private static final int LEVEL_SHIFT = 2;       // 每层格子边长放大 4 倍
+    private static final int LEVELS = 6;
+
+    private final List<Map<Long, Cell>> levels = new ArrayList<>(LEVELS);
+    // 比最粗一层格子还大的图形
+    private final Cell oversized = new Cell(8);
+    // 共用这个索引的快照中最大的图形数；下标小于它的条目撤销时不删，快照还要查到它们
+    private int shared;
+
+    ShapeIndex() {
+        for (int i = 0; i < LEVELS; i++) {
+            levels.add(new ConcurrentHashMap<>());
+        }
+    }
+
+    // 取快照时调用，size 为快照的图形数
+    void share(int size) {
+        shared = Math.max(shared, size);
+    }
+
+    boolean isShared() {
+        return shared > 0;
+    }
+
+    void insert(int id, Rectangle bounds) {
+        int level = levelOf(bounds);
+        if (level < 0) {
+            oversized.add(id);
+            return;
+        }
+        Map<Long, Cell> cells = levels.get(level);
+        int shift = shiftOf(level);
+        int cx1 = (bounds.x + bounds.width - 1) >> shift;
+        int cy1 = (bounds.y + bounds.height - 1) >> shift;
+        for (int cy = bounds.y >> shift; cy <= cy1; cy++) {
+            for (int cx = bounds.x >> shift; cx <= cx1; cx++) {
+                cells.computeIfAbsent(key(cx, cy), k -> new Cell(4)).add(id);
+            }
+        }
+    }
+
+    // 只支持移除最后插入的图形（撤销）
+    // 快照还能看到的图形只留下条目；同一下标再加入新图形后会多出一份旧条目，查询方本来就要核对包围盒
+    void removeLast(int id, Rectangle bounds) {
+        if (id < shared) return;
+        int level = levelOf(bounds);
+        if (level < 0) {
+            if (!oversized.isEmpty() && oversized.last() == id) oversized.removeLast();
+            return;
+        }
+        Map<Long, Cell> cells = levels.get(level);
+        int shift = shiftOf(level);
+        int cx1 = (bounds.x + bounds.width - 1) >> shift;
+        int cy1 = (bounds.y + bounds.height - 1) >> shift;
+        for (int cy = bounds.y >> shift; cy <= cy1; cy++) {
+            for (int cx = bounds.x >> shift; cx <= cx1; cx++) {
+                Long k = key(cx, cy);
+                Cell cell = cells.get(k);
+                if (cell != null && !cell.isEmpty() && cell.last() == id) {
+                    cell.removeLast();
+                    if (cell.isEmpty()) cells.remove(k);
+                }
+            }
+        }
+    }
+
+    // 只用于没有快照共用的索引
+    void clear() {
+        for (Map<Long, Cell> cells : levels) {
+            cells.clear();
+        }
+        oversized.clear();
+    }
+
+    // 只取 id 小于 limit 的图形，结果按 id 升序（即绘制顺序）写入 out，调用方仍需自行判断包围盒是否相交
+    void query(Rectangle area, IntList out, int limit) {
+        out.clear();
+        oversized.copyTo(out, limit);
+        for (int level = 0; level < LEVELS; level++) {
+            Map<Long, Cell> cells = levels.get(level);
+            if (cells.isEmpty()) continue;
+            int shift = shiftOf(level);
+            int cx0 = area.x >> shift;
+            int cy0 = area.y >> shift;
+            int cx1 = (area.x + area.width - 1) >> shift;
+            int cy1 = (area.y + area.height - 1) >> shift;
+            if ((long) (cx1 - cx0 + 1) * (cy1 - cy0 + 1) > cells.size()) {
+                // 查询范围比已占用的格子还多时，直接遍历格子
+                for (Map.Entry<Long, Cell> entry : cells.entrySet()) {
+                    long k = entry.getKey();
+                    int cx = (int) (k >> 32);
+                    int cy = (int) k;
+                    if (cx >= cx0 && cx <= cx1 && cy >= cy0 && cy <= cy1) {
+                        entry.getValue().copyTo(out, limit);
+                    }
+                }
+                continue;
+            }
+            for (int cy = cy0; cy <= cy1; cy++) {
+                for (int cx = cx0; cx <= cx1; cx++) {
+                    Cell cell = cells.get(key(cx, cy));
+                    if (cell != null) cell.copyTo(out, limit);
+                }
+            }
+        }
+        out.sortUnique();
+    }
+
+    private static int levelOf(Rectangle bounds) {
+        int extent = Math.max(bounds.width, bounds.height);
+        for (int level = 0; level < LEVELS; level++) {
+            if (extent <= 1 << shiftOf(level)) return level;
+        }
+        return -1;
+    }
+
+    private static int shiftOf(int level) {
+        return BASE_CELL_SHIFT + level * LEVEL_SHIFT;
+    }
+
+    private static long key(int cx, int cy) {
+        return ((long) cx << 32) | (cy & 0xffffffffL);
+    }
+
+    // 一个格子里的 id 列表，只在末尾增删
+    // 写入方先写元素、再更新长度，读取方先读长度、再读数组，读到的前缀总是完整的
+    private static final class Cell {
+        private volatile int[] ids;
+        private volatile int size;
+
+        Cell(int capacity) {
+            ids = new int[capacity];
+        }
+
+        void add(int id) {
+            int n = size;
+            int[] a = ids;
+            if (n == a.length) {
+                a = Arrays.copyOf(a, n * 2);
+                ids = a;
+            }
+            a[n] = id;
+            size = n + 1;
+        }
+
+        int last() {
+            return ids[size - 1];
+        }
+
+        void removeLast() {
+            size = size - 1;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        void clear() {
+            size = 0;
+        }
+
+        void copyTo(IntList out, int limit) {
+            int n = size;
+            int[] a = ids;
+            for (int i = 0; i < n; i++) {
+                if (a[i] < limit) out.add(a[i]);
+            }
+        }
+    }
+}
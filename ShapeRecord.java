@@ -1,28 +1,50 @@
-package com.outprogram.ui;
-import java.awt.*;
-import java.io.Serializable;
-import java.util.List;
-
-public class ShapeRecord implements Serializable {
-    private static final long serialVersionUID = 1L;
-    
-    public String type;
-    public int x1, y1, x2, y2;
-    public List<Point> points;
-    public boolean filled;
-
-    public ShapeRecord(String type, int x1, int y1, int x2, int y2, boolean filled) {
-        this.type = type;
-        this.x1 = x1;
-        this.y1 = y1;
-        this.x2 = x2;
-        this.y2 = y2;
-        this.filled = filled;
-    }
-
-    public ShapeRecord(String type, List<Point> points, boolean filled) {
-        this.type = type;
-        this.points = points;
-        this.filled = filled;
-    }
+package com.outprogram.ui;
+import java.awt.*;
+import java.io.Serializable;
+import java.util.List;
+
+public class ShapeRecord implements Serializable {
+    private static final long serialVersionUID = 1L;
+    
+    public String type;
+    public int x1, y1, x2, y2;
+    public List<Point> points;
+    public boolean filled;
+    // 几何包围盒，首次使用时计算
+    private transient Rectangle bounds;
+
+    public ShapeRecord(String type, int x1, int y1, int x2, int y2, boolean filled) {
+        this.type = type;
+        this.x1 = x1;
+        this.y1 = y1;
+        this.x2 = x2;
+        this.y2 = y2;
+        this.filled = filled;
+    }
+
+    public ShapeRecord(String type, List<Point> points, boolean filled) {
+        this.type = type;
+        this.points = points;
+        this.filled = filled;
+    }
+
+    public Rectangle getBounds() {
+        if (bounds == null) {
+            if (points == null) {
+                bounds = new Rectangle(Math.min(x1, x2), Math.min(y1, y2),
+                        Math.abs(x2 - x1) + 1, Math.abs(y2 - y1) + 1);
+            } else {
+                int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE;
+                int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+                for (Point p : points) {
+                    minX = Math.min(minX, p.x);
+                    minY = Math.min(minY, p.y);
+                    maxX = Math.max(maxX, p.x);
+                    maxY = Math.max(maxY, p.y);
+                }
+                bounds = new Rectangle(minX, minY, maxX - minX + 1, maxY - minY + 1);
+            }
+        }
+        return bounds;
+    }
 }
\ No newline at end of file
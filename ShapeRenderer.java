@@ -0,0 +1,139 @@
+package com.outprogram.ui;
+
+import java.awt.*;
+
+// 把 ShapeStore 画到任意 Graphics2D 上，不依赖 Swing 组件，可在后台线程使用
+class ShapeRenderer {
+    // 线宽加抗锯齿向外溢出的像素
+    static final int PAINT_SLACK = 2;
+    // 按类型码取颜色
+    private static final Color[] COLORS = {Color.BLUE, Color.GREEN, Color.RED, Color.MAGENTA, Color.BLACK};
+
+    private ShapeRenderer() {}
+
+    // 该类型图形的绘制颜色，矢量导出也用它
+    static Color color(byte type) {
+        return COLORS[type];
+    }
+
+    static void paint(Graphics2D g2d, ShapeStore store) {
+        paint(g2d, store, false);
+    }
+
+    // reduced 为 true 时按细节层次绘制：不足一个像素的图形画成一个点，多边形与手绘线先简化再画
+    static void paint(Graphics2D g2d, ShapeStore store, boolean reduced) {
+        double pixel = reduced ? pixelSize(g2d) : 0;
+        Rectangle clip = g2d.getClipBounds();
+        // 相邻图形颜色相同时不再调用 setColor
+        byte current = -1;
+        if (clip == null) {
+            for (int id = 0, n = store.size(); id < n; id++) {
+                current = paintShape(g2d, store, id, pixel, current);
+            }
+            report(store.size(), 0);
+            return;
+        }
+        // 只取与裁剪区相交的图形，按原顺序绘制
+        int slack = cullSlack(g2d);
+        clip.grow(slack, slack);
+        IntList ids = new IntList();
+        store.query(clip, ids);
+        int drawn = 0;
+        for (int i = 0; i < ids.size(); i++) {
+            int id = ids.get(i);
+            if (store.intersects(id, clip)) {
+                current = paintShape(g2d, store, id, pixel, current);
+                drawn++;
+            }
+        }
+        report(drawn, store.size() - drawn);
+    }
+
+    // current 为 g2d 当前颜色对应的类型码，返回画完后的类型码
+    private static byte paintShape(Graphics2D g2d, ShapeStore store, int id, double pixel, byte current) {
+        byte type = store.type(id);
+        if (current < 0 || COLORS[type] != COLORS[current]) {
+            g2d.setColor(COLORS[type]);
+        }
+        drawShape(g2d, store, id, pixel);
+        return type;
+    }
+
+    private static void report(int drawn, int culled) {
+        RenderMetrics metrics = RenderMetrics.get();
+        if (metrics.isEnabled()) {
+            metrics.shapesPainted(drawn, culled);
+        }
+    }
+
+    // 裁剪区外扩的距离（用户坐标）；缩小显示时抗锯齿溢出的一个设备像素在用户坐标下更宽
+    static int cullSlack(Graphics2D g2d) {
+        return (int) Math.ceil(PAINT_SLACK * Math.max(1, pixelSize(g2d)));
+    }
+
+    // 一个设备像素在用户坐标下的边长
+    static double pixelSize(Graphics2D g2d) {
+        double scale = Math.sqrt(Math.abs(g2d.getTransform().getDeterminant()));
+        return scale > 0 ? 1 / scale : 1;
+    }
+
+    static void paintShape(Graphics2D g2d, ShapeStore store, int id) {
+        paintShape(g2d, store, id, 0);
+    }
+
+    // pixel 为 0 时按原样绘制
+    static void paintShape(Graphics2D g2d, ShapeStore store, int id, double pixel) {
+        byte type = store.type(id);
+        g2d.setColor(COLORS[type]);
+        drawShape(g2d, store, id, pixel);
+    }
+
+    // 按当前颜色绘制，不设置颜色
+    private static void drawShape(Graphics2D g2d, ShapeStore store, int id, double pixel) {
+        int ax = store.x1(id), ay = store.y1(id), bx = store.x2(id), by = store.y2(id);
+        boolean filled = store.isFilled(id);
+        byte type = store.type(id);
+        if (pixel > 0 && Math.abs(bx - ax) < pixel && Math.abs(by - ay) < pixel) {
+            int side = (int) Math.ceil(pixel);
+            g2d.fillRect(Math.min(ax, bx), Math.min(ay, by), side, side);
+            return;
+        }
+        switch (type) {
+            case ShapeStore.LINE:
+                g2d.drawLine(ax, ay, bx, by);
+                break;
+            case ShapeStore.RECT:
+                int rx = Math.min(ax, bx);
+                int ry = Math.min(ay, by);
+                int rw = Math.abs(bx - ax);
+                int rh = Math.abs(by - ay);
+                if (filled) g2d.fillRect(rx, ry, rw, rh);
+                else g2d.drawRect(rx, ry, rw, rh);
+                break;
+            case ShapeStore.OVAL:
+                int ox = Math.min(ax, bx);
+                int oy = Math.min(ay, by);
+                int ow = Math.abs(bx - ax);
+                int oh = Math.abs(by - ay);
+                if (filled) g2d.fillOval(ox, oy, ow, oh);
+                else g2d.drawOval(ox, oy, ow, oh);
+                break;
+            case ShapeStore.POLYGON:
+                Polygon polygon = pixel > 0 ? store.simplified(id, pixel) : store.polygon(id);
+                if (polygon.npoints >= 3) { // ✅ 至少3点
+                    if (filled) g2d.fill(polygon);
+                    else g2d.draw(polygon);
+                }
+                break;
+            case ShapeStore.STROKE:
+                Polygon stroke = pixel > 0 ? store.simplified(id, pixel) : store.polygon(id);
+                if (stroke.npoints == 1) {
+                    // 单击留下的一个点
+                    g2d.drawLine(stroke.xpoints[0], stroke.ypoints[0], stroke.xpoints[0], stroke.ypoints[0]);
+                } else {
+                    g2d.draw(stroke);
+                }
+                break;
+        }
+    }
+}
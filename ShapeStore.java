@@ -0,0 +1,430 @@
+package com.outprogram.ui;
+
+import java.awt.Polygon;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// 按列存放的图形仓库：类型码、坐标数组、填充位图；多边形与手绘线的顶点只存在提交时建好的 Polygon 里
+class ShapeStore {
+    static final byte LINE = 0;
+    static final byte RECT = 1;
+    static final byte OVAL = 2;
+    static final byte POLYGON = 3;
+    // 手绘线：不闭合的折线，不填充
+    static final byte STROKE = 4;
+
+    private static final String[] TYPE_NAMES = {"line", "rect", "oval", "polygon", "pencil"};
+    // 顶点数不超过这个值的多边形不做简化
+    private static final int SIMPLIFY_MIN_POINTS = 8;
+
+    private byte[] types;
+    // 多边形与手绘线在这四列中存放包围盒的两个角
+    private int[] x1, y1, x2, y2;
+    // 填充位图，每个 long 存 64 个图形
+    private long[] filled;
+    // 多边形与手绘线提交时就建好的 Polygon（手绘线为 Polyline），既是顶点存储也直接交给 Java2D 绘制；建好后不再修改
+    private Polygon[] polygons;
+    private long polygonBytes;
+    // 简化后的多边形，绘制时按需生成；快照也可以写入，条目本身不可变
+    private Simplified[] simplified;
+    private int size;
+    // 快照直接共用数组：下标小于这个值的元素可能还有快照在读，改写之前先把数组复制一份
+    // 末尾追加只写快照看不到的位置，不需要复制；只有撤销后再添加、清空这类改写才复制
+    private int sharedShapes;
+
+    // 快照与仓库共用索引，查询时按自己的图形数过滤；不带索引的仓库在第一次查询时才建立
+    private volatile ShapeIndex index;
+    private final boolean readOnly;
+
+    ShapeStore() {
+        this(16);
+    }
+
+    ShapeStore(int capacity) {
+        this(capacity, true);
+    }
+
+    // indexed 为 false 时不随添加维护索引，第一次查询时才整体建立；用于只做中转的仓库
+    ShapeStore(int capacity, boolean indexed) {
+        allocateShapes(capacity);
+        index = indexed ? new ShapeIndex() : null;
+        readOnly = false;
+    }
+
+    // 不可变快照，O(1)：与 source 共用数组和空间索引，只记下当时的长度；source 之后改写共用部分前会先复制
+    private ShapeStore(ShapeStore source) {
+        size = source.size;
+        types = source.types;
+        x1 = source.x1;
+        y1 = source.y1;
+        x2 = source.x2;
+        y2 = source.y2;
+        filled = source.filled;
+        polygons = source.polygons;
+        polygonBytes = source.polygonBytes;
+        simplified = source.simplified;
+        index = source.index;
+        if (index != null) index.share(size);
+        readOnly = true;
+        source.sharedShapes = Math.max(source.sharedShapes, size);
+    }
+
+    // 调用方要保证快照期间没有其他线程在修改这个仓库
+    ShapeStore snapshot() {
+        return readOnly ? this : new ShapeStore(this);
+    }
+
+    static byte typeCode(String type) {
+        for (byte i = 0; i < TYPE_NAMES.length; i++) {
+            if (TYPE_NAMES[i].equals(type)) return i;
+        }
+        throw new IllegalArgumentException("Unknown shape type: " + type);
+    }
+
+    static String typeName(byte type) {
+        return TYPE_NAMES[type];
+    }
+
+    // 几何为一串顶点的类型
+    static boolean hasVertices(byte type) {
+        return type == POLYGON || type == STROKE;
+    }
+
+    int add(byte type, int ax, int ay, int bx, int by, boolean fill) {
+        checkWritable();
+        if (size < sharedShapes) unshareShapes();
+        ensureCapacity(size + 1);
+        int id = size;
+        types[id] = type;
+        x1[id] = ax;
+        y1[id] = ay;
+        x2[id] = bx;
+        y2[id] = by;
+        setFilled(id, fill);
+        // 撤销时若数组与快照共用，这两格没有清掉
+        polygons[id] = null;
+        simplified[id] = null;
+        size++;
+        if (index != null) index.insert(id, getBounds(id));
+        return id;
+    }
+
+    int addPolygon(int[] xs, int[] ys, int n, boolean fill) {
+        return addVertices(POLYGON, xs, ys, n, fill);
+    }
+
+    int addStroke(int[] xs, int[] ys, int n) {
+        return addVertices(STROKE, xs, ys, n, false);
+    }
+
+    int addVertices(byte type, int[] xs, int[] ys, int n, boolean fill) {
+        checkWritable();
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+        for (int i = 0; i < n; i++) {
+            minX = Math.min(minX, xs[i]);
+            minY = Math.min(minY, ys[i]);
+            maxX = Math.max(maxX, xs[i]);
+            maxY = Math.max(maxY, ys[i]);
+        }
+        int id = add(type, minX, minY, maxX, maxY, fill);
+        // Polygon 的构造方法按 n 复制数组，调用方的数组可以继续复用
+        polygons[id] = type == STROKE ? new Polyline(xs, ys, n) : new Polygon(xs, ys, n);
+        polygonBytes += polygonBytes(n);
+        return id;
+    }
+
+    int add(ShapeRecord record) {
+        byte type = typeCode(record.type);
+        if (record.points == null) {
+            return add(type, record.x1, record.y1, record.x2, record.y2, record.filled);
+        }
+        int n = record.points.size();
+        int[] xs = new int[n];
+        int[] ys = new int[n];
+        for (int i = 0; i < n; i++) {
+            xs[i] = record.points.get(i).x;
+            ys[i] = record.points.get(i).y;
+        }
+        return addVertices(type, xs, ys, n, record.filled);
+    }
+
+    // 把 source 中 [from, to) 的图形按原顺序追加进来，列数组整段复制，多边形对象直接共享
+    void addRange(ShapeStore source, int from, int to) {
+        checkWritable();
+        int n = to - from;
+        if (n <= 0) return;
+        if (size < sharedShapes) unshareShapes();
+        ensureCapacity(size + n);
+        System.arraycopy(source.types, from, types, size, n);
+        System.arraycopy(source.x1, from, x1, size, n);
+        System.arraycopy(source.y1, from, y1, size, n);
+        System.arraycopy(source.x2, from, x2, size, n);
+        System.arraycopy(source.y2, from, y2, size, n);
+        System.arraycopy(source.polygons, from, polygons, size, n);
+        System.arraycopy(source.simplified, from, simplified, size, n);
+        for (int i = 0; i < n; i++) {
+            if (polygons[size + i] != null) polygonBytes += polygonBytes(polygons[size + i].npoints);
+            setFilled(size + i, source.isFilled(from + i));
+        }
+        int first = size;
+        size += n;
+        if (index != null) {
+            for (int id = first; id < size; id++) {
+                index.insert(id, getBounds(id));
+            }
+        }
+    }
+
+    // [from, size()) 的图形复制到一个新仓库
+    ShapeStore copyTail(int from) {
+        ShapeStore copy = new ShapeStore(size - from, false);
+        copy.addRange(this, from, size);
+        return copy;
+    }
+
+    // 从末尾依次移除，直到只剩 newSize 个图形
+    void truncate(int newSize) {
+        while (size > newSize) {
+            removeLast();
+        }
+    }
+
+    void removeLast() {
+        checkWritable();
+        int id = size - 1;
+        if (index != null) index.removeLast(id, getBounds(id));
+        if (polygons[id] != null) {
+            polygonBytes -= polygonBytes(polygons[id].npoints);
+            // 快照还在读的格子不能清
+            if (id >= sharedShapes) {
+                polygons[id] = null;
+                simplified[id] = null;
+            }
+        }
+        size--;
+    }
+
+    void clear() {
+        checkWritable();
+        // 与快照共用的数组留给快照，换一组新的
+        if (sharedShapes > 0) {
+            allocateShapes(types.length);
+        } else {
+            Arrays.fill(polygons, 0, size, null);
+            Arrays.fill(simplified, 0, size, null);
+        }
+        size = 0;
+        polygonBytes = 0;
+        if (index != null) {
+            // 快照还在用旧索引
+            if (index.isShared()) index = new ShapeIndex();
+            else index.clear();
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    byte type(int id) {
+        return types[id];
+    }
+
+    int x1(int id) {
+        return x1[id];
+    }
+
+    int y1(int id) {
+        return y1[id];
+    }
+
+    int x2(int id) {
+        return x2[id];
+    }
+
+    int y2(int id) {
+        return y2[id];
+    }
+
+    boolean isFilled(int id) {
+        return (filled[id >> 6] & (1L << id)) != 0;
+    }
+
+    private void setFilled(int id, boolean fill) {
+        if (fill) filled[id >> 6] |= 1L << id;
+        else filled[id >> 6] &= ~(1L << id);
+    }
+
+    private static int words(int capacity) {
+        return (capacity + 63) >> 6;
+    }
+
+    // 不是多边形或手绘线时为 0
+    int vertexCount(int id) {
+        Polygon polygon = polygons[id];
+        return polygon == null ? 0 : polygon.npoints;
+    }
+
+    // 第 id 个图形的第 i 个顶点
+    int vertexX(int id, int i) {
+        return polygons[id].xpoints[i];
+    }
+
+    int vertexY(int id, int i) {
+        return polygons[id].ypoints[i];
+    }
+
+    Polygon polygon(int id) {
+        return polygons[id];
+    }
+
+    // 按容差简化后的多边形，容差为 pixel 的一半并向下取到 2 的幂，同一缩放级别下可以复用
+    Polygon simplified(int id, double pixel) {
+        Polygon polygon = polygons[id];
+        if (polygon.npoints <= SIMPLIFY_MIN_POINTS) return polygon;
+        int level = Math.getExponent(pixel);
+        Simplified cached = simplified[id];
+        if (cached != null && cached.level == level) return cached.polygon;
+
+        Polygon result = Simplifier.simplify(polygon.xpoints, polygon.ypoints, polygon.npoints,
+                Math.scalb(0.5, level));
+        if (result.npoints < (types[id] == STROKE ? 2 : 3)) result = polygon;
+        else if (types[id] == STROKE) result = new Polyline(result.xpoints, result.ypoints, result.npoints);
+        simplified[id] = new Simplified(result, level);
+        return result;
+    }
+
+    private static final class Simplified {
+        final Polygon polygon;
+        final int level;
+
+        Simplified(Polygon polygon, int level) {
+            this.polygon = polygon;
+            this.level = level;
+        }
+    }
+
+    // 几何包围盒，与 ShapeRecord.getBounds() 一致
+    Rectangle getBounds(int id) {
+        return new Rectangle(Math.min(x1[id], x2[id]), Math.min(y1[id], y2[id]),
+                Math.abs(x2[id] - x1[id]) + 1, Math.abs(y2[id] - y1[id]) + 1);
+    }
+
+    // 全部图形的包围盒；为空时返回 null
+    Rectangle getBounds() {
+        return getBounds(0, size);
+    }
+
+    // [from, to) 的图形的包围盒；为空时返回 null
+    Rectangle getBounds(int from, int to) {
+        if (from >= to) return null;
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+        for (int id = from; id < to; id++) {
+            minX = Math.min(minX, Math.min(x1[id], x2[id]));
+            minY = Math.min(minY, Math.min(y1[id], y2[id]));
+            maxX = Math.max(maxX, Math.max(x1[id], x2[id]));
+            maxY = Math.max(maxY, Math.max(y1[id], y2[id]));
+        }
+        return new Rectangle(minX, minY, maxX - minX + 1, maxY - minY + 1);
+    }
+
+    boolean intersects(int id, Rectangle area) {
+        return Math.max(x1[id], x2[id]) >= area.x && Math.min(x1[id], x2[id]) < area.x + area.width
+                && Math.max(y1[id], y2[id]) >= area.y && Math.min(y1[id], y2[id]) < area.y + area.height;
+    }
+
+    // 结果按 id 升序写入 out
+    void query(Rectangle area, IntList out) {
+        ShapeIndex idx = index;
+        if (idx == null) idx = buildIndex();
+        idx.query(area, out, size);
+    }
+
+    private synchronized ShapeIndex buildIndex() {
+        if (index == null) {
+            ShapeIndex idx = new ShapeIndex();
+            for (int id = 0; id < size; id++) {
+                idx.insert(id, getBounds(id));
+            }
+            index = idx;
+        }
+        return index;
+    }
+
+    private void checkWritable() {
+        if (readOnly) throw new IllegalStateException("Snapshot is read-only");
+    }
+
+    ShapeRecord get(int id) {
+        if (!hasVertices(types[id])) {
+            return new ShapeRecord(typeName(types[id]), x1[id], y1[id], x2[id], y2[id], isFilled(id));
+        }
+        Polygon polygon = polygons[id];
+        List<Point> points = new ArrayList<>(polygon.npoints);
+        for (int i = 0; i < polygon.npoints; i++) {
+            Point p = new Point();
+            p.x = polygon.xpoints[i];
+            p.y = polygon.ypoints[i];
+            points.add(p);
+        }
+        return new ShapeRecord(typeName(types[id]), points, isFilled(id));
+    }
+
+    // 列数组与多边形对象（即全部顶点）占用的字节数（估算，不含索引）
+    long footprintBytes() {
+        long perShape = 1 + 4 * 4 + 4 + 4;
+        return types.length * perShape + filled.length * 8L + polygonBytes;
+    }
+
+    private static long polygonBytes(int n) {
+        return 16 + 2 * (16 + 4L * n);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= types.length) return;
+        int n = Math.max(capacity, types.length + (types.length >> 1));
+        types = Arrays.copyOf(types, n);
+        x1 = Arrays.copyOf(x1, n);
+        y1 = Arrays.copyOf(y1, n);
+        x2 = Arrays.copyOf(x2, n);
+        y2 = Arrays.copyOf(y2, n);
+        filled = Arrays.copyOf(filled, words(n));
+        polygons = Arrays.copyOf(polygons, n);
+        simplified = Arrays.copyOf(simplified, n);
+        // 换成了新数组，快照留在旧数组上
+        sharedShapes = 0;
+    }
+
+    private void allocateShapes(int capacity) {
+        types = new byte[capacity];
+        x1 = new int[capacity];
+        y1 = new int[capacity];
+        x2 = new int[capacity];
+        y2 = new int[capacity];
+        filled = new long[words(capacity)];
+        polygons = new Polygon[capacity];
+        simplified = new Simplified[capacity];
+        sharedShapes = 0;
+    }
+
+    private void unshareShapes() {
+        int n = types.length;
+        types = Arrays.copyOf(types, n);
+        x1 = Arrays.copyOf(x1, n);
+        y1 = Arrays.copyOf(y1, n);
+        x2 = Arrays.copyOf(x2, n);
+        y2 = Arrays.copyOf(y2, n);
+        filled = Arrays.copyOf(filled, filled.length);
+        polygons = Arrays.copyOf(polygons, n);
+        simplified = Arrays.copyOf(simplified, n);
+        sharedShapes = 0;
+    }
+}
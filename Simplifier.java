@@ -0,0 +1,70 @@
+package com.outprogram.ui;
+
+import java.awt.Polygon;
+
+// Douglas–Peucker 折线简化：去掉偏离不超过 tolerance 的顶点，首尾顶点保留
+// 用显式栈代替递归，顶点再多也不会栈溢出
+final class Simplifier {
+    private Simplifier() {}
+
+    static Polygon simplify(int[] xs, int[] ys, int n, double tolerance) {
+        if (n <= 3) return new Polygon(xs, ys, n);
+        boolean[] keep = new boolean[n];
+        keep[0] = true;
+        keep[n - 1] = true;
+        double limit = tolerance * tolerance;
+
+        IntList stack = new IntList();
+        stack.add(0);
+        stack.add(n - 1);
+        while (!stack.isEmpty()) {
+            int last = stack.last();
+            stack.removeLast();
+            int first = stack.last();
+            stack.removeLast();
+
+            int farthest = -1;
+            double max = limit;
+            for (int i = first + 1; i < last; i++) {
+                double d = squaredDistance(xs[i], ys[i], xs[first], ys[first], xs[last], ys[last]);
+                if (d > max) {
+                    max = d;
+                    farthest = i;
+                }
+            }
+            if (farthest >= 0) {
+                keep[farthest] = true;
+                stack.add(first);
+                stack.add(farthest);
+                stack.add(farthest);
+                stack.add(last);
+            }
+        }
+
+        int count = 0;
+        for (boolean k : keep) {
+            if (k) count++;
+        }
+        int[] rx = new int[count];
+        int[] ry = new int[count];
+        for (int i = 0, j = 0; i < n; i++) {
+            if (keep[i]) {
+                rx[j] = xs[i];
+                ry[j] = ys[i];
+                j++;
+            }
+        }
+        return new Polygon(rx, ry, count);
+    }
+
+    // 点到线段的距离平方，StrokeBuilder 也用
+    static double squaredDistance(int px, int py, int ax, int ay, int bx, int by) {
+        double dx = bx - ax;
+        double dy = by - ay;
+        double length = dx * dx + dy * dy;
+        double t = length == 0 ? 0 : Math.max(0, Math.min(1, ((px - ax) * dx + (py - ay) * dy) / length));
+        double ex = px - (ax + t * dx);
+        double ey = py - (ay + t * dy);
+        return ex * ex + ey * ey;
+    }
+}
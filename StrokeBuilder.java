@@ -0,0 +1,134 @@
+package com.outprogram.ui;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.util.Arrays;
+
+// 手绘笔画的采集：拖动事件的坐标直接写进 int 数组，边采集边简化
+// 最后一个顶点是浮动的：新点到来时，如果从上一个固定顶点到新点的线段与其间所有原始点的偏差都不超过 tolerance，
+// 就把浮动顶点挪到新点，否则浮动顶点固定下来，新点成为新的浮动顶点
+final class StrokeBuilder {
+    // 一段直线上累积的原始点上限，超过后强制固定顶点，每个事件的开销有上界
+    private static final int MAX_RUN = 256;
+
+    private final double limit;
+    private int[] xs = new int[64];
+    private int[] ys = new int[64];
+    private int size;
+    // 上一个固定顶点与浮动顶点之间被合并掉的原始点
+    private final IntList runX = new IntList();
+    private final IntList runY = new IntList();
+    // 自上次取走以来有变化的线段所占的区域
+    private int dirtyX0, dirtyY0, dirtyX1, dirtyY1;
+    private boolean dirty;
+
+    StrokeBuilder(int x, int y, double tolerance) {
+        limit = tolerance * tolerance;
+        xs[0] = x;
+        ys[0] = y;
+        size = 1;
+        markDirty(x, y);
+    }
+
+    // 加入一个原始点；返回顶点是否有变化
+    boolean add(int x, int y) {
+        int last = size - 1;
+        if (xs[last] == x && ys[last] == y) return false;
+        if (size >= 2 && runX.size() < MAX_RUN && absorbs(x, y)) {
+            runX.add(xs[last]);
+            runY.add(ys[last]);
+            markDirty(xs[last - 1], ys[last - 1]);
+            markDirty(xs[last], ys[last]);
+            xs[last] = x;
+            ys[last] = y;
+            markDirty(x, y);
+            return true;
+        }
+        runX.clear();
+        runY.clear();
+        if (size == xs.length) {
+            xs = Arrays.copyOf(xs, size * 2);
+            ys = Arrays.copyOf(ys, size * 2);
+        }
+        xs[size] = x;
+        ys[size] = y;
+        size++;
+        markDirty(xs[last], ys[last]);
+        markDirty(x, y);
+        return true;
+    }
+
+    // 上一个固定顶点到 (x, y) 的线段能否代替浮动顶点及其之前合并掉的点
+    private boolean absorbs(int x, int y) {
+        int ax = xs[size - 2], ay = ys[size - 2];
+        if (Simplifier.squaredDistance(xs[size - 1], ys[size - 1], ax, ay, x, y) > limit) return false;
+        for (int i = 0; i < runX.size(); i++) {
+            if (Simplifier.squaredDistance(runX.get(i), runY.get(i), ax, ay, x, y) > limit) return false;
+        }
+        return true;
+    }
+
+    private void markDirty(int x, int y) {
+        if (!dirty) {
+            dirtyX0 = dirtyX1 = x;
+            dirtyY0 = dirtyY1 = y;
+            dirty = true;
+            return;
+        }
+        dirtyX0 = Math.min(dirtyX0, x);
+        dirtyY0 = Math.min(dirtyY0, y);
+        dirtyX1 = Math.max(dirtyX1, x);
+        dirtyY1 = Math.max(dirtyY1, y);
+    }
+
+    // 取走自上次调用以来需要重绘的区域（世界坐标）；没有变化时返回 null
+    Rectangle takeDirty() {
+        if (!dirty) return null;
+        dirty = false;
+        return new Rectangle(dirtyX0, dirtyY0, dirtyX1 - dirtyX0 + 1, dirtyY1 - dirtyY0 + 1);
+    }
+
+    // 整条笔画的包围盒
+    Rectangle getBounds() {
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+        for (int i = 0; i < size; i++) {
+            minX = Math.min(minX, xs[i]);
+            minY = Math.min(minY, ys[i]);
+            maxX = Math.max(maxX, xs[i]);
+            maxY = Math.max(maxY, ys[i]);
+        }
+        return new Rectangle(minX, minY, maxX - minX + 1, maxY - minY + 1);
+    }
+
+    // 只画与裁剪区相交的线段；拖动时重绘区域只覆盖新线段，画的也就只有新线段
+    void paint(Graphics2D g2d) {
+        Rectangle clip = g2d.getClipBounds();
+        if (size == 1) {
+            g2d.drawLine(xs[0], ys[0], xs[0], ys[0]);
+            return;
+        }
+        int slack = ShapeRenderer.cullSlack(g2d);
+        for (int i = 1; i < size; i++) {
+            int ax = xs[i - 1], ay = ys[i - 1], bx = xs[i], by = ys[i];
+            if (clip != null && (Math.max(ax, bx) + slack < clip.x || Math.min(ax, bx) - slack >= clip.x + clip.width
+                    || Math.max(ay, by) + slack < clip.y || Math.min(ay, by) - slack >= clip.y + clip.height)) {
+                continue;
+            }
+            g2d.drawLine(ax, ay, bx, by);
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    // 顶点数组，只有前 size() 个有效
+    int[] xpoints() {
+        return xs;
+    }
+
+    int[] ypoints() {
+        return ys;
+    }
+}
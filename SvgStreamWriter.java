@@ -0,0 +1,90 @@
+package com.outprogram.ui;
+
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.io.IOException;
+import java.io.OutputStream;
+
+// 流式写出 SVG：每个图形一个元素，颜色与填充方式放进按类型码命名的样式类，元素本身只有几何
+class SvgStreamWriter extends VectorStreamWriter {
+
+    SvgStreamWriter(OutputStream out, Rectangle bounds, Color background) throws IOException {
+        super(out, bounds);
+        print("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        print("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"").print(bounds.width)
+                .print("\" height=\"").print(bounds.height)
+                .print("\" viewBox=\"").print(bounds.x).print(' ').print(bounds.y).print(' ')
+                .print(bounds.width).print(' ').print(bounds.height).print("\">\n");
+        // s<类型码> 为描边，f<类型码> 为填充；多边形与 java.awt.Polygon 一样按奇偶规则填充
+        print("<style>");
+        for (byte type = 0; type <= ShapeStore.STROKE; type++) {
+            String color = hex(ShapeRenderer.color(type));
+            print(".s").print(type).print("{fill:none;stroke:").print(color).print('}');
+            print(".f").print(type).print("{fill:").print(color).print(";fill-rule:evenodd}");
+        }
+        print("</style>\n");
+        print("<rect x=\"").print(bounds.x).print("\" y=\"").print(bounds.y)
+                .print("\" width=\"").print(bounds.width).print("\" height=\"").print(bounds.height)
+                .print("\" fill=\"").print(hex(background)).print("\"/>\n");
+    }
+
+    @Override
+    void writeShape(ShapeStore store, int id) throws IOException {
+        byte type = store.type(id);
+        int ax = store.x1(id), ay = store.y1(id), bx = store.x2(id), by = store.y2(id);
+        int x = Math.min(ax, bx), y = Math.min(ay, by), w = Math.abs(bx - ax), h = Math.abs(by - ay);
+        char style = store.isFilled(id) ? 'f' : 's';
+        switch (type) {
+            case ShapeStore.LINE:
+                // 直线没有填充，总是描边
+                style = 's';
+                print("<line x1=\"").print(ax).print("\" y1=\"").print(ay)
+                        .print("\" x2=\"").print(bx).print("\" y2=\"").print(by).print('"');
+                break;
+            case ShapeStore.RECT:
+                print("<rect x=\"").print(x).print("\" y=\"").print(y)
+                        .print("\" width=\"").print(w).print("\" height=\"").print(h).print('"');
+                break;
+            case ShapeStore.OVAL:
+                print("<ellipse cx=\"").print(x + w / 2.0).print("\" cy=\"").print(y + h / 2.0)
+                        .print("\" rx=\"").print(w / 2.0).print("\" ry=\"").print(h / 2.0).print('"');
+                break;
+            case ShapeStore.POLYGON:
+                print("<polygon");
+                printPoints(store, id);
+                break;
+            case ShapeStore.STROKE:
+                if (store.vertexCount(id) == 1) {
+                    // 单击留下的一个点，画成一个像素大小的方块
+                    print("<rect x=\"").print(ax).print("\" y=\"").print(ay).print("\" width=\"1\" height=\"1\"");
+                    style = 'f';
+                } else {
+                    print("<polyline");
+                    printPoints(store, id);
+                }
+                break;
+            default:
+                return;
+        }
+        print(" class=\"").print(style).print(type).print("\"/>\n");
+    }
+
+    private void printPoints(ShapeStore store, int id) throws IOException {
+        print(" points=\"");
+        int n = store.vertexCount(id);
+        for (int i = 0; i < n; i++) {
+            if (i > 0) print(' ');
+            print(store.vertexX(id, i)).print(',').print(store.vertexY(id, i));
+        }
+        print('"');
+    }
+
+    @Override
+    protected void finish() throws IOException {
+        print("</svg>\n");
+    }
+
+    private static String hex(Color color) {
+        return String.format("#%06x", color.getRGB() & 0xffffff);
+    }
+}
@@ -0,0 +1,129 @@
+package com.outprogram.ui;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+// 预先栅格化的画面瓦片，键为 (缩放级别, 瓦片 x, 瓦片 y)，按 LRU 淘汰，总内存不超过上限
+// 瓦片 (tx, ty) 覆盖设备坐标 [tx*TILE_SIZE, (tx+1)*TILE_SIZE)，设备坐标 = 世界坐标 * scale(level)
+final class TileCache {
+    static final int TILE_SIZE = 256;
+    static final long DEFAULT_MEMORY = 64L << 20;
+    // 每级缩放 2 的 1/4 次方，级别 0 为 1:1
+    static final int MIN_LEVEL = -40;
+    static final int MAX_LEVEL = 16;
+    private static final int LEVELS_PER_OCTAVE = 4;
+    private static final long TILE_BYTES = TILE_SIZE * TILE_SIZE * 4L;
+
+    private final LinkedHashMap<Long, BufferedImage> tiles = new LinkedHashMap<Long, BufferedImage>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, BufferedImage> eldest) {
+            return size() > Math.max(maxTiles, reserved);
+        }
+    };
+    private int maxTiles;
+    // 当前一帧可见的瓦片数，上限再小也不能淘汰正在显示的瓦片
+    private int reserved;
+
+    TileCache() {
+        setMemoryLimit(DEFAULT_MEMORY);
+    }
+
+    static double scale(int level) {
+        return Math.pow(2, (double) level / LEVELS_PER_OCTAVE);
+    }
+
+    void setMemoryLimit(long bytes) {
+        maxTiles = (int) Math.min(Integer.MAX_VALUE, Math.max(1, bytes / TILE_BYTES));
+        trim();
+    }
+
+    void reserve(int visibleTiles) {
+        reserved = visibleTiles;
+    }
+
+    long getMemoryUsed() {
+        return tiles.size() * TILE_BYTES;
+    }
+
+    BufferedImage get(int level, int tx, int ty) {
+        return tiles.get(key(level, tx, ty));
+    }
+
+    void put(int level, int tx, int ty, BufferedImage tile) {
+        tiles.put(key(level, tx, ty), tile);
+    }
+
+    void clear() {
+        tiles.clear();
+    }
+
+    // 绘制瓦片用的 Graphics2D：裁剪到瓦片范围，之后按世界坐标绘制
+    static Graphics2D createGraphics(BufferedImage tile, int level, int tx, int ty) {
+        Graphics2D g2d = tile.createGraphics();
+        g2d.setClip(0, 0, TILE_SIZE, TILE_SIZE);
+        g2d.translate(-tx * TILE_SIZE, -ty * TILE_SIZE);
+        double scale = scale(level);
+        g2d.scale(scale, scale);
+        return g2d;
+    }
+
+    // 撤销等使区域内容改变时，丢掉各缩放级别上与该区域相交的瓦片，下次显示时重绘
+    void invalidate(Rectangle world) {
+        for (Iterator<Long> it = tiles.keySet().iterator(); it.hasNext(); ) {
+            if (intersects(it.next(), world)) it.remove();
+        }
+    }
+
+    // 新增图形直接叠加到已缓存的相交瓦片上，不必重绘整块瓦片
+    void paintOnto(Rectangle world, Consumer<Graphics2D> painter) {
+        for (Map.Entry<Long, BufferedImage> entry : tiles.entrySet()) {
+            long k = entry.getKey();
+            if (!intersects(k, world)) continue;
+            Graphics2D g2d = createGraphics(entry.getValue(), level(k), tileX(k), tileY(k));
+            painter.accept(g2d);
+            g2d.dispose();
+        }
+    }
+
+    private void trim() {
+        Iterator<Long> it = tiles.keySet().iterator();
+        while (tiles.size() > Math.max(maxTiles, reserved) && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+
+    // 在设备坐标下比较，放大与缩小时线宽和抗锯齿溢出的像素都算在内
+    private static boolean intersects(long key, Rectangle world) {
+        double scale = scale(level(key));
+        long x0 = (long) Math.floor(world.x * scale) - ShapeRenderer.PAINT_SLACK;
+        long y0 = (long) Math.floor(world.y * scale) - ShapeRenderer.PAINT_SLACK;
+        long x1 = (long) Math.ceil((world.x + (double) world.width) * scale) + ShapeRenderer.PAINT_SLACK;
+        long y1 = (long) Math.ceil((world.y + (double) world.height) * scale) + ShapeRenderer.PAINT_SLACK;
+        long tx = (long) tileX(key) * TILE_SIZE;
+        long ty = (long) tileY(key) * TILE_SIZE;
+        return tx < x1 && tx + TILE_SIZE > x0 && ty < y1 && ty + TILE_SIZE > y0;
+    }
+
+    private static long key(int level, int tx, int ty) {
+        return ((long) (level & 0xff) << 56) | ((tx & 0xfffffffL) << 28) | (ty & 0xfffffffL);
+    }
+
+    private static int level(long key) {
+        return (int) (key >> 56);
+    }
+
+    // 28 位有符号数还原
+    private static int tileX(long key) {
+        return (int) (key << 8 >> 36);
+    }
+
+    private static int tileY(long key) {
+        return (int) (key << 36 >> 36);
+    }
+}
@@ -0,0 +1,143 @@
+package com.outprogram.ui;
+
+import java.awt.*;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.zip.Deflater;
+
+// 分条带并行渲染并流式编码，可输出远大于画布的分辨率；渲染和编码都在工作线程上进行，导出线程只按顺序写盘
+class TiledExporter {
+    private static final int STRIP_HEIGHT = 256;
+
+    private final ForkJoinPool pool;
+    private boolean reducedDetail;
+    private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+    // 为 null 时按文件扩展名选择
+    private RasterEncoder.Factory encoder;
+
+    // 进度回调；isCancelled 返回 true 时导出中止，目标文件保持不变
+    interface Progress {
+        void update(int done, int total);
+
+        boolean isCancelled();
+    }
+
+    TiledExporter() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    TiledExporter(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    // 按细节层次导出：适合缩略图，细小图形与多边形的细节会被简化
+    void setReducedDetail(boolean reducedDetail) {
+        this.reducedDetail = reducedDetail;
+    }
+
+    // PNG 的压缩级别，0 为不压缩，9 为最小；对 .qoi 文件无效
+    void setCompressionLevel(int level) {
+        this.compressionLevel = level;
+    }
+
+    // 指定编码器，不再按扩展名选择
+    void setEncoder(RasterEncoder.Factory encoder) {
+        this.encoder = encoder;
+    }
+
+    // 把 srcWidth x srcHeight 的画布缩放到 outWidth x outHeight 写入 file
+    void export(Scene scene, Color background, int srcWidth, int srcHeight,
+                int outWidth, int outHeight, File file) throws IOException {
+        export(scene, background, srcWidth, srcHeight, outWidth, outHeight, file, null);
+    }
+
+    void export(Scene scene, Color background, int srcWidth, int srcHeight,
+                int outWidth, int outHeight, File file, Progress progress) throws IOException {
+        export(scene, background, new Rectangle2D.Double(0, 0, srcWidth, srcHeight), outWidth, outHeight, file, progress);
+    }
+
+    // 把世界坐标中的 source 区域缩放到 outWidth x outHeight 写入 file
+    void export(Scene scene, Color background, Rectangle2D source,
+                int outWidth, int outHeight, File file, Progress progress) throws IOException {
+        long start = System.nanoTime();
+        double sx = outWidth / source.getWidth();
+        double sy = outHeight / source.getHeight();
+        double ox = source.getX();
+        double oy = source.getY();
+        int strips = (outHeight + STRIP_HEIGHT - 1) / STRIP_HEIGHT;
+        // 同时在途的条带数有上限，内存占用与输出高度无关
+        int window = Math.max(2, pool.getParallelism() * 2);
+        Deque<ForkJoinTask<RasterEncoder.Strip>> pending = new ArrayDeque<>();
+        int next = 0;
+        // 先写临时文件，成功后再替换，取消或失败不会留下半个文件
+        File partial = new File(file.getPath() + ".part");
+        boolean done = false;
+
+        RasterEncoder.Factory factory = encoder != null ? encoder : RasterEncoder.forFile(file, compressionLevel);
+
+        try (FileChannel channel = FileChannel.open(partial.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+             RasterEncoder out = factory.open(channel, outWidth, outHeight)) {
+            for (int strip = 0; strip < strips; strip++) {
+                if (progress != null && progress.isCancelled()) {
+                    throw new CancellationException();
+                }
+                while (next < strips && next < strip + window) {
+                    int y0 = next * STRIP_HEIGHT;
+                    int rows = Math.min(STRIP_HEIGHT, outHeight - y0);
+                    boolean reduced = reducedDetail;
+                    boolean last = next == strips - 1;
+                    pending.add(pool.submit(() -> out.encode(
+                            renderStrip(scene, background, sx, sy, ox, oy, outWidth, y0, rows, reduced),
+                            outWidth, rows, last)));
+                    next++;
+                }
+                out.write(pending.poll().join());
+                if (progress != null) {
+                    progress.update(strip + 1, strips);
+                }
+            }
+            done = true;
+        } finally {
+            for (ForkJoinTask<RasterEncoder.Strip> task : pending) {
+                task.cancel(true);
+            }
+            if (!done) {
+                Files.deleteIfExists(partial.toPath());
+            }
+        }
+        Files.move(partial.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        RenderMetrics metrics = RenderMetrics.get();
+        if (metrics.isEnabled()) {
+            metrics.exportFinished(System.nanoTime() - start);
+        }
+    }
+
+    private static int[] renderStrip(Scene scene, Color background, double sx, double sy, double ox, double oy,
+                                     int width, int y0, int rows, boolean reduced) {
+        BufferedImage strip = new BufferedImage(width, rows, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = strip.createGraphics();
+        g2d.setColor(background);
+        g2d.fillRect(0, 0, width, rows);
+        // 设置裁剪区后只会绘制落在本条带内的图形
+        g2d.setClip(0, 0, width, rows);
+        g2d.translate(0, -y0);
+        g2d.scale(sx, sy);
+        g2d.translate(-ox, -oy);
+        scene.paint(g2d, reduced);
+        g2d.dispose();
+        return ((DataBufferInt) strip.getRaster().getDataBuffer()).getData();
+    }
+}
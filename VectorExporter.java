@@ -0,0 +1,94 @@
+package com.outprogram.ui;
+
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+import java.util.concurrent.CancellationException;
+
+// 把整个画面导出为 SVG 或 PDF，格式由扩展名决定
+// 映射文档按块解码、不经过块缓存，图形一个个写出，内存占用与图形数量无关
+final class VectorExporter {
+    // 每写这么多个图形报告一次进度、检查一次取消
+    private static final int PROGRESS_STEP = 65536;
+
+    private VectorExporter() {}
+
+    static boolean supports(File file) {
+        String name = file.getName().toLowerCase(Locale.ROOT);
+        return name.endsWith(".svg") || name.endsWith(".pdf");
+    }
+
+    static void export(Scene scene, Color background, File file) throws IOException {
+        export(scene, background, file, null);
+    }
+
+    // progress 的进度单位是 PROGRESS_STEP 个图形
+    static void export(Scene scene, Color background, File file, TiledExporter.Progress progress) throws IOException {
+        long start = System.nanoTime();
+        Rectangle bounds = scene.getBounds();
+        if (bounds == null) {
+            bounds = new Rectangle(0, 0, 1, 1);
+        } else {
+            bounds.grow(ShapeRenderer.PAINT_SLACK, ShapeRenderer.PAINT_SLACK);
+        }
+        int total = Math.max(1, (scene.size() + PROGRESS_STEP - 1) / PROGRESS_STEP);
+        int written = 0;
+        // 先写临时文件，成功后再替换，取消或失败不会留下半个文件
+        File partial = new File(file.getPath() + ".part");
+        boolean done = false;
+        try (VectorStreamWriter out = open(file, partial, bounds, background)) {
+            if (scene.base != null) {
+                for (int b = 0; b < scene.base.blockCount(); b++) {
+                    written = writeAll(out, scene.base.readBlock(b), written, total, progress);
+                }
+            }
+            writeAll(out, scene.shapes, written, total, progress);
+            done = true;
+        } finally {
+            if (!done) {
+                Files.deleteIfExists(partial.toPath());
+            }
+        }
+        Files.move(partial.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        if (progress != null) {
+            progress.update(total, total);
+        }
+        RenderMetrics metrics = RenderMetrics.get();
+        if (metrics.isEnabled()) {
+            metrics.exportFinished(System.nanoTime() - start);
+        }
+    }
+
+    private static VectorStreamWriter open(File file, File partial, Rectangle bounds, Color background)
+            throws IOException {
+        OutputStream os = new BufferedOutputStream(Files.newOutputStream(partial.toPath()));
+        try {
+            if (file.getName().toLowerCase(Locale.ROOT).endsWith(".pdf")) {
+                return new PdfStreamWriter(os, bounds, background);
+            }
+            return new SvgStreamWriter(os, bounds, background);
+        } catch (IOException e) {
+            os.close();
+            throw e;
+        }
+    }
+
+    // 返回累计写出的图形数
+    private static int writeAll(VectorStreamWriter out, ShapeStore shapes, int written, int total,
+                                TiledExporter.Progress progress) throws IOException {
+        for (int id = 0; id < shapes.size(); id++) {
+            out.writeShape(shapes, id);
+            if (++written % PROGRESS_STEP == 0 && progress != null) {
+                if (progress.isCancelled()) throw new CancellationException();
+                progress.update(written / PROGRESS_STEP, total);
+            }
+        }
+        return written;
+    }
+}
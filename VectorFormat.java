@@ -0,0 +1,369 @@
+package com.outprogram.ui;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+// 矢量文档格式（.drw），通过 FileChannel 流式读写，不经过 Java 序列化
+//
+// 文件头: "DRWV" + 版本号(1 字节)
+// 每个图形: 标记字节(低 3 位类型, 第 4 位实心) + zigzag varint 坐标
+//   直线/矩形/椭圆: x1,y1 相对上一个图形的起点, x2,y2 相对 x1,y1
+//   多边形/手绘线: 顶点数, 之后每个顶点相对前一个顶点（第一个相对上一个图形的起点）
+// 结束标记 0xFF + 图形总数(4 字节)
+//
+// 版本 2 起图形按 BLOCK_SIZE 个一组分块，每块开头的差分基准归零，
+// 文件末尾追加块索引（每块的偏移、图形数、包围盒）和定长的索引尾，
+// MappedDocument 据此按需解码单个块
+final class VectorFormat {
+    static final byte[] MAGIC = {'D', 'R', 'W', 'V'};
+    static final byte[] INDEX_MAGIC = {'D', 'R', 'W', 'I'};
+    static final int VERSION = 2;
+    static final String EXTENSION = ".drw";
+
+    static final int BLOCK_SIZE = 4096;
+    // 每块: 偏移(8) + 图形数(4) + 包围盒(4 * 4)
+    static final int INDEX_ENTRY_SIZE = 28;
+    // 索引尾: 索引偏移(8) + 块数(4) + "DRWI"
+    static final int TAIL_SIZE = 16;
+
+    private static final int END = 0xFF;
+    private static final int FILLED_BIT = 0x08;
+    private static final int TYPE_MASK = 0x07;
+    private static final int BUFFER_SIZE = 1 << 16;
+    // 一个 varint 最多 5 字节，一个图形头最多 1 + 4 * 5 字节
+    private static final int MAX_RECORD_HEAD = 21;
+
+    private VectorFormat() {}
+
+    static void write(ShapeStore store, File file) throws IOException {
+        write(new Scene(null, store), file);
+    }
+
+    // 先写临时文件并落盘，再替换并同步目录，崩溃后目标文件要么是旧的要么是完整的新文件；目标文件可能正被 MappedDocument 映射
+    static void write(Scene scene, File file) throws IOException {
+        File partial = new File(file.getPath() + ".part");
+        boolean done = false;
+        try (FileChannel channel = FileChannel.open(partial.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            Writer out = new Writer(channel);
+            out.buffer.put(MAGIC).put((byte) VERSION);
+            if (scene.base != null) {
+                for (int b = 0; b < scene.base.blockCount(); b++) {
+                    out.writeAll(scene.base.readBlock(b));
+                }
+            }
+            out.writeAll(scene.shapes);
+            out.finish();
+            channel.force(true);
+            done = true;
+        } finally {
+            if (!done) Files.deleteIfExists(partial.toPath());
+        }
+        Files.move(partial.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        syncDirectory(file.getAbsoluteFile().getParentFile());
+    }
+
+    // 让目录中的新建、改名落盘；Windows 上不能以这种方式打开目录，直接跳过
+    static void syncDirectory(File dir) {
+        try (FileChannel channel = FileChannel.open(dir.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // 平台不支持对目录 fsync
+        }
+    }
+
+    static ShapeStore read(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            Reader in = new Reader(channel);
+            in.ensure(MAGIC.length + 1);
+            int version = readHeader(in.buffer, file);
+
+            ShapeStore store = new ShapeStore((int) Math.min(Math.max(channel.size() / 6, 16), Integer.MAX_VALUE));
+            Decoder decoder = new Decoder();
+            while (true) {
+                if (version >= 2 && store.size() % BLOCK_SIZE == 0) {
+                    decoder.resetAnchor();
+                }
+                in.ensure(MAX_RECORD_HEAD);
+                if (!decoder.decode(in.buffer, in, store)) break;
+            }
+            in.ensure(4);
+            int count = in.buffer.getInt();
+            if (count != store.size()) {
+                throw new IOException("Corrupt document: expected " + count + " shapes, read " + store.size());
+            }
+            // 块索引不在这里读，但它的长度是确定的，借此发现截在索引里的文件
+            if (version >= 2 && channel.size() != in.position() + indexLength(count)) {
+                throw new EOFException("Truncated drawing document: " + file);
+            }
+            return store;
+        } catch (BufferUnderflowException e) {
+            // 文件末尾附近 ensure 给不足字节，说明文件被截断
+            throw new EOFException("Truncated drawing document: " + file);
+        }
+    }
+
+    // 块索引加索引尾的字节数
+    static long indexLength(int shapes) {
+        long blocks = (shapes + (long) BLOCK_SIZE - 1) / BLOCK_SIZE;
+        return blocks * INDEX_ENTRY_SIZE + TAIL_SIZE;
+    }
+
+    static int readHeader(ByteBuffer buffer, File file) throws IOException {
+        for (byte b : MAGIC) {
+            if (buffer.get() != b) throw new IOException("Not a drawing document: " + file);
+        }
+        int version = buffer.get();
+        if (version < 1 || version > VERSION) throw new IOException("Unsupported document version " + version);
+        return version;
+    }
+
+    // 从 buffer 当前位置解码一整块（count 个图形）到新的 ShapeStore
+    static ShapeStore decodeBlock(ByteBuffer buffer, int count) throws IOException {
+        ShapeStore store = new ShapeStore(count);
+        Decoder decoder = new Decoder();
+        try {
+            for (int i = 0; i < count; i++) {
+                if (!decoder.decode(buffer, null, store)) throw new IOException("Corrupt document: block ended early");
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Corrupt document: block ended early");
+        }
+        return store;
+    }
+
+    private static class Writer {
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        final FileChannel channel;
+        long flushed;
+        int prevX, prevY;
+        int shapeCount;
+        // 块索引：每块的起始偏移，以及 minX, minY, maxX, maxY
+        long[] blockOffsets = new long[16];
+        int[] blockBounds = new int[16 * 4];
+
+        Writer(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        long position() {
+            return flushed + buffer.position();
+        }
+
+        void writeAll(ShapeStore store) throws IOException {
+            for (int id = 0, n = store.size(); id < n; id++) {
+                write(store, id);
+            }
+        }
+
+        void write(ShapeStore store, int id) throws IOException {
+            int block = shapeCount / BLOCK_SIZE;
+            if (shapeCount % BLOCK_SIZE == 0) {
+                startBlock(block);
+            }
+            encode(store, id);
+            int k = block * 4;
+            blockBounds[k] = Math.min(blockBounds[k], Math.min(store.x1(id), store.x2(id)));
+            blockBounds[k + 1] = Math.min(blockBounds[k + 1], Math.min(store.y1(id), store.y2(id)));
+            blockBounds[k + 2] = Math.max(blockBounds[k + 2], Math.max(store.x1(id), store.x2(id)));
+            blockBounds[k + 3] = Math.max(blockBounds[k + 3], Math.max(store.y1(id), store.y2(id)));
+            shapeCount++;
+        }
+
+        private void startBlock(int block) {
+            if (block == blockOffsets.length) {
+                blockOffsets = Arrays.copyOf(blockOffsets, block * 2);
+                blockBounds = Arrays.copyOf(blockBounds, block * 2 * 4);
+            }
+            blockOffsets[block] = position();
+            blockBounds[block * 4] = Integer.MAX_VALUE;
+            blockBounds[block * 4 + 1] = Integer.MAX_VALUE;
+            blockBounds[block * 4 + 2] = Integer.MIN_VALUE;
+            blockBounds[block * 4 + 3] = Integer.MIN_VALUE;
+            prevX = 0;
+            prevY = 0;
+        }
+
+        private void encode(ShapeStore store, int id) throws IOException {
+            ensure(MAX_RECORD_HEAD);
+            byte type = store.type(id);
+            buffer.put((byte) (type | (store.isFilled(id) ? FILLED_BIT : 0)));
+            if (ShapeStore.hasVertices(type)) {
+                int count = store.vertexCount(id);
+                putVarint(count);
+                int px = prevX, py = prevY;
+                for (int i = 0; i < count; i++) {
+                    ensure(10);
+                    putSigned(store.vertexX(id, i) - px);
+                    putSigned(store.vertexY(id, i) - py);
+                    px = store.vertexX(id, i);
+                    py = store.vertexY(id, i);
+                }
+                prevX = store.vertexX(id, 0);
+                prevY = store.vertexY(id, 0);
+            } else {
+                int x1 = store.x1(id), y1 = store.y1(id);
+                putSigned(x1 - prevX);
+                putSigned(y1 - prevY);
+                putSigned(store.x2(id) - x1);
+                putSigned(store.y2(id) - y1);
+                prevX = x1;
+                prevY = y1;
+            }
+        }
+
+        void finish() throws IOException {
+            ensure(5);
+            buffer.put((byte) END).putInt(shapeCount);
+            long indexOffset = position();
+            int blocks = (shapeCount + BLOCK_SIZE - 1) / BLOCK_SIZE;
+            for (int block = 0; block < blocks; block++) {
+                ensure(INDEX_ENTRY_SIZE);
+                int count = Math.min(BLOCK_SIZE, shapeCount - block * BLOCK_SIZE);
+                buffer.putLong(blockOffsets[block]).putInt(count);
+                for (int k = 0; k < 4; k++) {
+                    buffer.putInt(blockBounds[block * 4 + k]);
+                }
+            }
+            ensure(TAIL_SIZE);
+            buffer.putLong(indexOffset).putInt(blocks).put(INDEX_MAGIC);
+            flush();
+        }
+
+        void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) flush();
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                flushed += channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        void putSigned(int value) {
+            putVarint((value << 1) ^ (value >> 31));
+        }
+
+        void putVarint(int value) {
+            while ((value & ~0x7F) != 0) {
+                buffer.put((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            buffer.put((byte) value);
+        }
+    }
+
+    // 解码单个图形，差分基准在相邻图形之间传递
+    private static class Decoder {
+        int[] xs = new int[16], ys = new int[16];
+        int prevX, prevY;
+
+        void resetAnchor() {
+            prevX = 0;
+            prevY = 0;
+        }
+
+        // in 不为 null 时按需补充缓冲区（流式读取），否则 buffer 必须已包含完整数据（内存映射）
+        boolean decode(ByteBuffer buffer, Reader in, ShapeStore store) throws IOException {
+            int tag = buffer.get() & 0xFF;
+            if (tag == END) return false;
+            int type = tag & TYPE_MASK;
+            boolean filled = (tag & FILLED_BIT) != 0;
+            if (ShapeStore.hasVertices((byte) type)) {
+                int count = getVarint(buffer);
+                // 每个顶点至少占 2 字节，顶点数不可能超过剩余字节数的一半
+                long available = in != null ? in.available() : buffer.remaining();
+                if (count <= 0 || count > available / 2) throw new IOException("Corrupt vertex count " + count);
+                if (xs.length < count) {
+                    xs = new int[count];
+                    ys = new int[count];
+                }
+                int px = prevX, py = prevY;
+                for (int i = 0; i < count; i++) {
+                    if (in != null) in.ensure(10);
+                    px += getSigned(buffer);
+                    py += getSigned(buffer);
+                    xs[i] = px;
+                    ys[i] = py;
+                }
+                prevX = xs[0];
+                prevY = ys[0];
+                store.addVertices((byte) type, xs, ys, count, filled);
+            } else if (type <= ShapeStore.OVAL) {
+                int x1 = prevX + getSigned(buffer);
+                int y1 = prevY + getSigned(buffer);
+                int x2 = x1 + getSigned(buffer);
+                int y2 = y1 + getSigned(buffer);
+                store.add((byte) type, x1, y1, x2, y2, filled);
+                prevX = x1;
+                prevY = y1;
+            } else {
+                throw new IOException("Corrupt document: unknown shape type " + type);
+            }
+            return true;
+        }
+    }
+
+    private static class Reader {
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        final FileChannel channel;
+        boolean eof;
+
+        Reader(FileChannel channel) {
+            this.channel = channel;
+            buffer.flip();
+        }
+
+        // 保证缓冲区中至少有 bytes 个字节（文件末尾除外）
+        void ensure(int bytes) throws IOException {
+            if (buffer.remaining() >= bytes || eof) {
+                if (!buffer.hasRemaining()) throw new EOFException("Truncated drawing document");
+                return;
+            }
+            buffer.compact();
+            while (buffer.position() < bytes) {
+                if (channel.read(buffer) < 0) {
+                    eof = true;
+                    break;
+                }
+            }
+            buffer.flip();
+            if (!buffer.hasRemaining()) throw new EOFException("Truncated drawing document");
+        }
+
+        // 已读入缓冲区的加上文件中尚未读的
+        long available() throws IOException {
+            return buffer.remaining() + channel.size() - channel.position();
+        }
+
+        long position() throws IOException {
+            return channel.position() - buffer.remaining();
+        }
+    }
+
+    static int getSigned(ByteBuffer buffer) throws IOException {
+        int raw = getVarint(buffer);
+        return (raw >>> 1) ^ -(raw & 1);
+    }
+
+    static int getVarint(ByteBuffer buffer) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            if (!buffer.hasRemaining()) throw new EOFException("Truncated drawing document");
+            int b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("Corrupt document: malformed varint");
+    }
+}
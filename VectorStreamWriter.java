@@ -0,0 +1,115 @@
+package com.outprogram.ui;
+
+import java.awt.Rectangle;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+// 文本类矢量格式（SVG、PDF）的流式写出：图形逐个编码进固定大小的缓冲区，满了就写出，整篇文档不驻留内存
+// 数字直接按 ASCII 写进缓冲区，不经过 String
+abstract class VectorStreamWriter implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private OutputStream out;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
+    // 输出的内容范围（世界坐标）
+    protected final Rectangle bounds;
+
+    VectorStreamWriter(OutputStream out, Rectangle bounds) {
+        this.out = out;
+        this.bounds = bounds;
+    }
+
+    // 按图形在 store 中的样子写出一个图形
+    abstract void writeShape(ShapeStore store, int id) throws IOException;
+
+    // 写出文件尾；缓冲区随后由 close 写出
+    protected abstract void finish() throws IOException;
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+            flushBuffer();
+            out.flush();
+        } finally {
+            out.close();
+        }
+    }
+
+    // 之后的内容改写到 next；切换前先把缓冲区写给原来的流
+    protected void switchOutput(OutputStream next) throws IOException {
+        flushBuffer();
+        out = next;
+    }
+
+    protected void flushBuffer() throws IOException {
+        if (position > 0) {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+    }
+
+    protected VectorStreamWriter print(String s) throws IOException {
+        int n = s.length();
+        if (position + n > buffer.length) flushBuffer();
+        if (n > buffer.length) {
+            for (int i = 0; i < n; i++) print(s.charAt(i));
+            return this;
+        }
+        for (int i = 0; i < n; i++) {
+            buffer[position++] = (byte) s.charAt(i);
+        }
+        return this;
+    }
+
+    protected VectorStreamWriter print(char c) throws IOException {
+        if (position == buffer.length) flushBuffer();
+        buffer[position++] = (byte) c;
+        return this;
+    }
+
+    protected VectorStreamWriter print(int v) throws IOException {
+        return print((long) v);
+    }
+
+    protected VectorStreamWriter print(long v) throws IOException {
+        if (position + 20 > buffer.length) flushBuffer();
+        if (v < 0) {
+            buffer[position++] = '-';
+            v = -v;
+        }
+        int end = position + digits(v);
+        position = end;
+        do {
+            buffer[--end] = (byte) ('0' + v % 10);
+            v /= 10;
+        } while (v != 0);
+        return this;
+    }
+
+    // 保留两位小数，去掉末尾的 0
+    protected VectorStreamWriter print(double v) throws IOException {
+        long hundredths = Math.round(v * 100);
+        if (hundredths % 100 == 0) return print(hundredths / 100);
+        if (hundredths < 0) {
+            print('-');
+            hundredths = -hundredths;
+        }
+        print(hundredths / 100).print('.');
+        int fraction = (int) (hundredths % 100);
+        print((char) ('0' + fraction / 10));
+        if (fraction % 10 != 0) print((char) ('0' + fraction % 10));
+        return this;
+    }
+
+    private static int digits(long v) {
+        int n = 1;
+        while (v >= 10) {
+            v /= 10;
+            n++;
+        }
+        return n;
+    }
+}
@@ -0,0 +1,213 @@
+package com.outprogram.ui;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.event.MouseEvent;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// 绘制热点路径的基准测试
+// 用法：java -jar benchmarks/target/benchmarks.jar RenderBenchmark -rf json -rff render.json
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class RenderBenchmark {
+    static final int WIDTH = 1920;
+    static final int HEIGHT = 1080;
+    // commitAndRenderFrame 的文档边长是屏幕的多少倍
+    private static final int WORLD = 16;
+
+    @Param({"1000", "100000", "1000000"})
+    int shapes;
+
+    private Scene scene;
+    private BufferedImage image;
+    private List<ShapeRecord> polygons;
+    private File dir;
+    private File png;
+    private DrawingPanel panel;
+    private BufferedImage screen;
+    private int step;
+    private DrawingDocument editable;
+    private BufferedImage frameImage;
+    private int commits;
+
+    @Setup
+    public void setUp() throws IOException {
+        scene = new Scene(null, randomStore(shapes, new Random(42)));
+        image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        polygons = randomPolygons(Math.min(shapes, 100_000), new Random(7));
+
+        dir = Files.createTempDirectory("drawbench").toFile();
+        File document = new File(dir, "bench" + VectorFormat.EXTENSION);
+        png = new File(dir, "bench.png");
+        VectorFormat.write(scene, document);
+        panel = new DrawingPanel();
+        panel.setSize(WIDTH, HEIGHT);
+        if (!panel.openDocument(document)) throw new IOException("Cannot open " + document);
+
+        // 拖拽预览：先按下鼠标，之后每次调用拖动一步
+        screen = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        panel.setDrawType("rect");
+        panel.mousePressed(event(MouseEvent.MOUSE_PRESSED, 100, 100));
+
+        // 可编辑的文档（不是映射打开的），铺满 16x16 屏，后台帧按 1:1 只看中间的一屏
+        editable = new DrawingDocument();
+        editable.replace(randomStore(shapes, new Random(43), WORLD * WIDTH, WORLD * HEIGHT), null);
+        frameImage = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+    }
+
+    @TearDown
+    public void tearDown() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    // 整层重绘：与 DrawingPanel.paintHistory 相同的路径
+    @Benchmark
+    public int paintHistory() {
+        return paintScene(true);
+    }
+
+    // 关闭抗锯齿（交互中降级时的画质），光栅化更便宜，逐图形的开销占比更大
+    @Benchmark
+    public int paintHistoryAliased() {
+        return paintScene(false);
+    }
+
+    // 多边形提交：点列表转成顶点数组并建好绘制用的 Polygon
+    @Benchmark
+    public int polygonConversion() {
+        ShapeStore target = new ShapeStore(polygons.size());
+        for (ShapeRecord record : polygons) {
+            target.add(record);
+        }
+        return target.size();
+    }
+
+    // 从打开的文档到写出 PNG 的完整保存流程
+    @Benchmark
+    public long saveImage() throws IOException {
+        if (!panel.saveImage(png)) throw new IOException("Cannot save " + png);
+        return png.length();
+    }
+
+    // 一次拖拽事件：处理 mouseDragged 后只重绘预览脏区，不含屏幕提交
+    @Benchmark
+    public int previewEvent() {
+        int x = 200 + step % 600;
+        int y = 200 + step % 400;
+        step++;
+        panel.mouseDragged(event(MouseEvent.MOUSE_DRAGGED, x, y));
+        Graphics2D g2d = screen.createGraphics();
+        g2d.clipRect(100 - ShapeRenderer.PAINT_SLACK, 100 - ShapeRenderer.PAINT_SLACK,
+                x - 100 + 2 * ShapeRenderer.PAINT_SLACK + 1, y - 100 + 2 * ShapeRenderer.PAINT_SLACK + 1);
+        panel.paintComponent(g2d);
+        g2d.dispose();
+        return x;
+    }
+
+    // 提交一个图形后的后台帧：与 DrawingPanel.requestFrame 相同，每个新版本取一次快照，再由渲染线程画出
+    @Benchmark
+    public int commitAndRenderFrame() {
+        int viewX = WORLD / 2 * WIDTH, viewY = WORLD / 2 * HEIGHT;
+        int x = viewX + 100 + commits % 500, y = viewY + 100 + commits % 300;
+        commits++;
+        editable.add(ShapeStore.RECT, x, y, x + 10, y + 10, false);
+        Scene snapshot = editable.snapshot();
+        BackgroundRenderer.Frame frame = new BackgroundRenderer.Frame(snapshot, Color.WHITE, 0,
+                viewX, viewY, WIDTH, HEIGHT, false, true, editable.shapes(), snapshot.shapes.size());
+        BackgroundRenderer.render(frame, frameImage);
+        return frameImage.getRGB(0, 0);
+    }
+
+    private int paintScene(boolean antialias) {
+        Graphics2D g2d = image.createGraphics();
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                antialias ? RenderingHints.VALUE_ANTIALIAS_ON : RenderingHints.VALUE_ANTIALIAS_OFF);
+        g2d.setColor(Color.WHITE);
+        g2d.fillRect(0, 0, WIDTH, HEIGHT);
+        scene.paint(g2d);
+        g2d.dispose();
+        return image.getRGB(WIDTH / 2, HEIGHT / 2);
+    }
+
+    private MouseEvent event(int id, int x, int y) {
+        return new MouseEvent(panel, id, System.currentTimeMillis(), 0, x, y, 1, false);
+    }
+
+    // 直线、矩形、椭圆、多边形各占四分之一，一半填充，尺寸多数很小，少数跨越大半个画布
+    static ShapeStore randomStore(int shapes, Random random) {
+        return randomStore(shapes, random, WIDTH, HEIGHT);
+    }
+
+    // 图形的起点均匀分布在 width x height 的画布上
+    static ShapeStore randomStore(int shapes, Random random, int width, int height) {
+        ShapeStore store = new ShapeStore(shapes);
+        int[] xs = new int[16];
+        int[] ys = new int[16];
+        for (int i = 0; i < shapes; i++) {
+            int x = random.nextInt(width);
+            int y = random.nextInt(height);
+            int extent = random.nextInt(100) < 95 ? 4 + random.nextInt(60) : 200 + random.nextInt(800);
+            boolean fill = random.nextBoolean();
+            byte type = (byte) (i & 3);
+            if (type == ShapeStore.POLYGON) {
+                int n = 3 + random.nextInt(xs.length - 3);
+                for (int k = 0; k < n; k++) {
+                    xs[k] = x + random.nextInt(extent);
+                    ys[k] = y + random.nextInt(extent);
+                }
+                store.addPolygon(xs, ys, n, fill);
+            } else {
+                store.add(type, x, y, x + random.nextInt(extent), y + random.nextInt(extent), fill);
+            }
+        }
+        return store;
+    }
+
+    private static List<ShapeRecord> randomPolygons(int count, Random random) {
+        List<ShapeRecord> records = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int x = random.nextInt(WIDTH);
+            int y = random.nextInt(HEIGHT);
+            int n = 3 + random.nextInt(30);
+            List<Point> points = new ArrayList<>(n);
+            for (int k = 0; k < n; k++) {
+                Point p = new Point();
+                p.x = x + random.nextInt(64);
+                p.y = y + random.nextInt(64);
+                points.add(p);
+            }
+            records.add(new ShapeRecord("polygon", points, random.nextBoolean()));
+        }
+        return records;
+    }
+}
@@ -0,0 +1,118 @@
+package com.outprogram.ui;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// .drw 文档读写的基准测试，以及与 Java 序列化（ObjectOutputStream）的对比
+// Point 不可序列化，多边形无法经过 ObjectOutputStream，对比只用直线、矩形、椭圆：plain* 与 serialized* 的数据相同
+// 用法：java -jar benchmarks/target/benchmarks.jar VectorFormatBenchmark -rf json -rff vector.json
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class VectorFormatBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    int shapes;
+
+    private ShapeStore store;
+    private ShapeStore plain;
+    private ArrayList<ShapeRecord> records;
+    private File dir;
+    private File document;
+    private File plainDocument;
+    private File serialized;
+
+    @Setup
+    public void setUp() throws IOException {
+        store = RenderBenchmark.randomStore(shapes, new Random(42));
+        plain = new ShapeStore(shapes);
+        records = new ArrayList<>(shapes);
+        for (int id = 0; id < store.size(); id++) {
+            byte type = store.type(id);
+            if (ShapeStore.hasVertices(type)) continue;
+            plain.add(type, store.x1(id), store.y1(id), store.x2(id), store.y2(id), store.isFilled(id));
+            records.add(new ShapeRecord(ShapeStore.typeName(type), store.x1(id), store.y1(id),
+                    store.x2(id), store.y2(id), store.isFilled(id)));
+        }
+
+        dir = Files.createTempDirectory("drawbench").toFile();
+        document = new File(dir, "bench" + VectorFormat.EXTENSION);
+        plainDocument = new File(dir, "plain" + VectorFormat.EXTENSION);
+        serialized = new File(dir, "plain.ser");
+        VectorFormat.write(store, document);
+        VectorFormat.write(plain, plainDocument);
+        serializedWrite();
+    }
+
+    @TearDown
+    public void tearDown() {
+        document.delete();
+        plainDocument.delete();
+        serialized.delete();
+        dir.delete();
+    }
+
+    @Benchmark
+    public long vectorWrite() throws IOException {
+        VectorFormat.write(store, document);
+        return document.length();
+    }
+
+    // 读出并建好空间索引
+    @Benchmark
+    public int vectorRead() throws IOException {
+        return VectorFormat.read(document).size();
+    }
+
+    @Benchmark
+    public long plainVectorWrite() throws IOException {
+        VectorFormat.write(plain, plainDocument);
+        return plainDocument.length();
+    }
+
+    @Benchmark
+    public int plainVectorRead() throws IOException {
+        return VectorFormat.read(plainDocument).size();
+    }
+
+    @Benchmark
+    public long serializedWrite() throws IOException {
+        try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(serialized)))) {
+            out.writeObject(records);
+        }
+        return serialized.length();
+    }
+
+    // 只反序列化出记录列表，不建索引
+    @Benchmark
+    public int serializedRead() throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(serialized)))) {
+            return ((List<?>) in.readObject()).size();
+        }
+    }
+}
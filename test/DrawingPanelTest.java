@@ -0,0 +1,55 @@
+package com.outprogram.ui;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class DrawingPanelTest {
+    @TempDir
+    File dir;
+
+    // 映射打开的文档里的图形也能点中，后画的盖住先画的
+    @Test
+    void hitTestsShapesOfAnOpenedDocument() throws IOException {
+        ShapeStore store = new ShapeStore();
+        store.add(ShapeStore.RECT, 100, 100, 200, 200, true);
+        // 把椭圆挤到第二块
+        for (int i = 0; i < VectorFormat.BLOCK_SIZE; i++) {
+            store.add(ShapeStore.LINE, 10_000 + i, 0, 10_000 + i, 5, false);
+        }
+        store.add(ShapeStore.OVAL, 150, 150, 250, 250, true);
+        store.addPolygon(new int[]{300, 400, 350}, new int[]{300, 300, 380}, 3, false);
+        File file = new File(dir, "hit" + VectorFormat.EXTENSION);
+        VectorFormat.write(store, file);
+
+        DrawingPanel panel = new DrawingPanel();
+        assertTrue(panel.openDocument(file));
+        assertEquals(0, panel.getDocument().shapes().size());
+        assertTrue(panel.getDocument().base().blockCount() > 1);
+
+        assertShape("rect", 100, panel.findShapeAt(120, 120));
+        assertShape("oval", 150, panel.findShapeAt(200, 200));
+        assertShape("line", 10_010, panel.findShapeAt(10_010, 3));
+        // 空心多边形只有靠近边线才算命中
+        assertNotNull(panel.findShapeAt(350, 301));
+        assertNull(panel.findShapeAt(350, 330));
+        assertNull(panel.findShapeAt(600, 600));
+
+        // 打开之后画的图形在最上面
+        panel.addShapes(Collections.singletonList(new ShapeRecord("rect", 190, 190, 210, 210, true)));
+        assertShape("rect", 190, panel.findShapeAt(200, 200));
+    }
+
+    private static void assertShape(String type, int x1, ShapeRecord record) {
+        assertNotNull(record);
+        assertEquals(type, record.type);
+        assertEquals(x1, record.x1);
+    }
+}
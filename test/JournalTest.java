@@ -0,0 +1,99 @@
+package com.outprogram.ui;
+
+import static com.outprogram.ui.ShapeAssert.assertSameShapes;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class JournalTest {
+    @TempDir
+    File dir;
+
+    @Test
+    void recoversSnapshotAndJournal() throws IOException {
+        ShapeStore shapes = new ShapeStore();
+        Journal journal = Journal.open(dir);
+        assertEquals(0, journal.takeRecovered().size());
+        append(journal, shapes, 0, 5);
+        journal.checkpoint(new Scene(null, copy(shapes)));
+        append(journal, shapes, 5, 8);
+        journal.removeLast();
+        shapes.removeLast();
+        journal.close();
+
+        assertSameShapes(shapes, reopen());
+        assertTrue(new File(dir, "autosave-1.drw").exists());
+        assertFalse(new File(dir, "autosave-0.journal").exists());
+    }
+
+    // 新快照只写了一半（崩溃或断电），退回上一代快照加日志
+    @Test
+    void fallsBackWhenNewestSnapshotIsUnreadable() throws IOException {
+        ShapeStore shapes = new ShapeStore();
+        Journal journal = Journal.open(dir);
+        journal.takeRecovered();
+        append(journal, shapes, 0, 6);
+        journal.checkpoint(new Scene(null, copy(shapes)));
+        append(journal, shapes, 6, 9);
+        journal.close();
+
+        File snapshot = new File(dir, "autosave-1.drw");
+        byte[] whole = Files.readAllBytes(snapshot.toPath());
+        Files.write(new File(dir, "autosave-2.drw").toPath(), Arrays.copyOf(whole, whole.length / 2));
+        Files.write(new File(dir, "autosave-2.journal").toPath(), new byte[0]);
+
+        journal = Journal.open(dir);
+        assertSameShapes(shapes, journal.takeRecovered());
+        // 退回后的下一次压缩覆盖掉坏掉的那一代
+        append(journal, shapes, 9, 10);
+        journal.checkpoint(new Scene(null, copy(shapes)));
+        journal.close();
+
+        assertSameShapes(shapes, reopen());
+        assertFalse(snapshot.exists());
+    }
+
+    @Test
+    void emptySnapshotFileFallsBackToEmptyCanvas() throws IOException {
+        ShapeStore shapes = new ShapeStore();
+        Journal journal = Journal.open(dir);
+        journal.takeRecovered();
+        append(journal, shapes, 0, 3);
+        journal.close();
+        Files.write(new File(dir, "autosave-1.drw").toPath(), new byte[0]);
+
+        assertSameShapes(shapes, reopen());
+    }
+
+    private ShapeStore reopen() throws IOException {
+        Journal journal = Journal.open(dir);
+        try {
+            return journal.takeRecovered();
+        } finally {
+            journal.close();
+        }
+    }
+
+    // 依次加入矩形和多边形，同时记入日志
+    private static void append(Journal journal, ShapeStore shapes, int from, int to) {
+        for (int i = from; i < to; i++) {
+            int id = i % 2 == 0
+                    ? shapes.add(ShapeStore.RECT, i, -i, i * 7, i * 3, i % 3 == 0)
+                    : shapes.addPolygon(new int[]{i, i + 10, i + 5}, new int[]{0, 0, i + 8}, 3, true);
+            journal.add(shapes, id);
+        }
+    }
+
+    private static ShapeStore copy(ShapeStore shapes) {
+        ShapeStore copy = new ShapeStore();
+        copy.addRange(shapes, 0, shapes.size());
+        return copy;
+    }
+}
@@ -0,0 +1,93 @@
+package com.outprogram.ui;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+// 绘制循环本身不应按图形分配对象：多边形与手绘线画的都是提交时建好的对象
+// 剩下的是 Java2D 内部的开销（抗锯齿时每个 Shape 一个路径迭代器，约 32 字节），
+// 每帧现建 Polygon/GeneralPath 时约 280 字节，上限定在两者之间
+class PaintAllocationTest {
+    private static final int SHAPES = 10_000;
+    private static final long MAX_BYTES_PER_SHAPE = 64;
+    // 有裁剪区时另有索引查询结果的 IntList 及排序去重，约 30 字节
+    private static final long MAX_BYTES_PER_SHAPE_CLIPPED = 96;
+
+    private static com.sun.management.ThreadMXBean threads;
+
+    @BeforeAll
+    static void checkSupport() {
+        threads = Allocations.threads();
+    }
+
+    @Test
+    void polygonsPaintWithoutPerShapeGarbage() {
+        ShapeStore store = new ShapeStore(SHAPES);
+        Random random = new Random(5);
+        int[] xs = new int[8];
+        int[] ys = new int[8];
+        for (int i = 0; i < SHAPES; i++) {
+            int n = 3 + random.nextInt(xs.length - 3);
+            int x = random.nextInt(1000), y = random.nextInt(700);
+            for (int k = 0; k < n; k++) {
+                xs[k] = x + random.nextInt(40);
+                ys[k] = y + random.nextInt(40);
+            }
+            store.addPolygon(xs, ys, n, i % 2 == 0);
+        }
+        assertPaintAllocation(store, false);
+        assertPaintAllocation(store, true);
+    }
+
+    @Test
+    void strokesPaintWithoutPerShapeGarbage() {
+        ShapeStore store = new ShapeStore(SHAPES);
+        Random random = new Random(6);
+        int[] xs = new int[16];
+        int[] ys = new int[16];
+        for (int i = 0; i < SHAPES; i++) {
+            int n = 2 + random.nextInt(xs.length - 2);
+            int x = random.nextInt(1000), y = random.nextInt(700);
+            for (int k = 0; k < n; k++) {
+                xs[k] = x + k * 3;
+                ys[k] = y + random.nextInt(20);
+            }
+            store.addStroke(xs, ys, n);
+        }
+        assertPaintAllocation(store, false);
+        assertPaintAllocation(store, true);
+    }
+
+    // clipped 为 true 时走按裁剪区查询索引的路径
+    private static void assertPaintAllocation(ShapeStore store, boolean clipped) {
+        BufferedImage image = new BufferedImage(1000, 700, BufferedImage.TYPE_INT_RGB);
+        // 先画几遍让 Java2D 的管线和 JIT 就绪
+        for (int i = 0; i < 5; i++) {
+            paint(store, image, clipped);
+        }
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < 3; i++) {
+            best = Math.min(best, Allocations.measure(threads, () -> paint(store, image, clipped)));
+        }
+        long perShape = best / store.size();
+        long limit = clipped ? MAX_BYTES_PER_SHAPE_CLIPPED : MAX_BYTES_PER_SHAPE;
+        assertTrue(perShape <= limit, (clipped ? "clipped" : "full") + " paint allocated "
+                + perShape + " bytes per shape (" + best + " bytes per frame)");
+    }
+
+    private static void paint(ShapeStore store, BufferedImage image, boolean clipped) {
+        Graphics2D g2d = image.createGraphics();
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g2d.setColor(Color.WHITE);
+        g2d.fillRect(0, 0, image.getWidth(), image.getHeight());
+        if (clipped) g2d.clipRect(0, 0, image.getWidth(), image.getHeight());
+        ShapeRenderer.paint(g2d, store);
+        g2d.dispose();
+    }
+}
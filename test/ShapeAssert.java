@@ -0,0 +1,38 @@
+package com.outprogram.ui;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// 逐个图形比较类型、实心和几何
+final class ShapeAssert {
+    private ShapeAssert() {}
+
+    static void assertSameShapes(ShapeStore expected, ShapeStore actual) {
+        assertEquals(expected.size(), actual.size(), "shape count");
+        for (int id = 0; id < expected.size(); id++) {
+            assertSameShape(expected, id, actual, id);
+        }
+    }
+
+    static void assertSameShape(ShapeStore expected, int id, ShapeStore actual, int actualId) {
+        assertEquals(expected.type(id), actual.type(actualId), "type of " + id);
+        assertEquals(expected.isFilled(id), actual.isFilled(actualId), "filled of " + id);
+        if (ShapeStore.hasVertices(expected.type(id))) {
+            assertArrayEquals(vertices(expected, id), vertices(actual, actualId), "vertices of " + id);
+        } else {
+            assertArrayEquals(new int[]{expected.x1(id), expected.y1(id), expected.x2(id), expected.y2(id)},
+                    new int[]{actual.x1(actualId), actual.y1(actualId), actual.x2(actualId), actual.y2(actualId)},
+                    "points of " + id);
+        }
+    }
+
+    private static int[] vertices(ShapeStore store, int id) {
+        int n = store.vertexCount(id);
+        int[] coords = new int[2 * n];
+        for (int i = 0; i < n; i++) {
+            coords[2 * i] = store.vertexX(id, i);
+            coords[2 * i + 1] = store.vertexY(id, i);
+        }
+        return coords;
+    }
+}
@@ -0,0 +1,80 @@
+package com.outprogram.ui;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class ShapeBatchTest {
+
+    @Test
+    void acceptsValidRecords() {
+        ShapeBatch batch = new ShapeBatch();
+        batch.add(new ShapeRecord("rect", 1, 2, 30, 40, true));
+        batch.add(new ShapeRecord("polygon", points(0, 0, 10, 0, 5, 8), false));
+        batch.add(new ShapeRecord("pencil", points(3, 4), false));
+        assertEquals(3, batch.size());
+    }
+
+    @Test
+    void rejectsVertexRecordsWithoutPoints() {
+        ShapeBatch batch = new ShapeBatch();
+        assertThrows(IllegalArgumentException.class,
+                () -> batch.add(new ShapeRecord("polygon", 0, 0, 10, 10, true)));
+        assertThrows(IllegalArgumentException.class,
+                () -> batch.add(new ShapeRecord("pencil", 0, 0, 10, 10, false)));
+        assertThrows(IllegalArgumentException.class,
+                () -> batch.add(new ShapeRecord("polygon", Collections.<Point>emptyList(), true)));
+        assertThrows(IllegalArgumentException.class,
+                () -> batch.add(new ShapeRecord("pencil", Collections.<Point>emptyList(), false)));
+        assertEquals(0, batch.size());
+    }
+
+    @Test
+    void rejectsPolygonWithTooFewPoints() {
+        ShapeBatch batch = new ShapeBatch();
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> batch.add(new ShapeRecord("polygon", points(0, 0, 10, 10), true)));
+        assertEquals("Polygon needs at least 3 points: 2", e.getMessage());
+        assertEquals(0, batch.size());
+    }
+
+    @Test
+    void rejectsPointsOnPlainShapes() {
+        ShapeBatch batch = new ShapeBatch();
+        assertThrows(IllegalArgumentException.class,
+                () -> batch.add(new ShapeRecord("rect", points(0, 0, 10, 0, 5, 8), true)));
+        assertThrows(IllegalArgumentException.class,
+                () -> batch.add(new ShapeRecord("star", 0, 0, 1, 1, false)));
+        assertEquals(0, batch.size());
+    }
+
+    // 批量接口遇到坏记录时在调用线程抛出，文档里不留下任何东西，之后照常保存
+    @Test
+    void badRecordNeverReachesTheDocument() throws Exception {
+        DrawingPanel panel = new DrawingPanel();
+        List<ShapeRecord> records = new ArrayList<>();
+        records.add(new ShapeRecord("line", 0, 0, 5, 5, false));
+        records.add(new ShapeRecord("polygon", 0, 0, 10, 10, true));
+        assertThrows(IllegalArgumentException.class, () -> panel.addShapes(records));
+        assertEquals(0, panel.getDocument().size());
+
+        records.remove(1);
+        panel.addShapes(records);
+        assertEquals(1, panel.getDocument().size());
+    }
+
+    static List<Point> points(int... coords) {
+        List<Point> points = new ArrayList<>();
+        for (int i = 0; i < coords.length; i += 2) {
+            Point p = new Point();
+            p.x = coords[i];
+            p.y = coords[i + 1];
+            points.add(p);
+        }
+        return points;
+    }
+}
@@ -0,0 +1,144 @@
+package com.outprogram.ui;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.Test;
+
+class ShapeStoreTest {
+    private static final int WORLD = 20_000;
+
+    // 快照与仓库共用索引：取快照后的第一次查询不应重建索引
+    @Test
+    void snapshotQueryDoesNotRebuildIndex() {
+        com.sun.management.ThreadMXBean threads = Allocations.threads();
+        ShapeStore store = randomStore(200_000, new Random(1));
+        IntList out = new IntList(1024);
+        Rectangle area = new Rectangle(1000, 1000, 300, 300);
+        // 先走一遍同样的路径，排除类加载和第一次编译的分配
+        ShapeStore warm = randomStore(100, new Random(2));
+        for (int i = 0; i < 3; i++) {
+            warm.add(ShapeStore.RECT, i, i, i + 5, i + 5, false);
+            warm.snapshot().query(area, out);
+            store.query(area, out);
+        }
+
+        long bytes = Allocations.measure(threads, () -> store.snapshot().query(area, out));
+        assertTrue(bytes < 64 * 1024, "snapshot query allocated " + bytes + " bytes");
+        assertEquals(bruteForce(store, area), matches(store.snapshot(), area));
+    }
+
+    // 快照之后撤销、再添加、清空，快照与仓库各自查到自己的图形
+    @Test
+    void snapshotsKeepTheirOwnResultsAfterEdits() {
+        Random random = new Random(3);
+        ShapeStore store = randomStore(2000, random);
+        ShapeStore first = store.snapshot();
+        store.truncate(1500);
+        addRandom(store, 800, random);
+        ShapeStore second = store.snapshot();
+        store.truncate(1900);
+        ShapeStore third = store.snapshot();
+        store.clear();
+        addRandom(store, 300, random);
+
+        for (int i = 0; i < 50; i++) {
+            Rectangle area = new Rectangle(random.nextInt(WORLD), random.nextInt(WORLD),
+                    1 + random.nextInt(4000), 1 + random.nextInt(4000));
+            for (ShapeStore s : new ShapeStore[]{first, second, third, store}) {
+                assertEquals(bruteForce(s, area), matches(s, area));
+            }
+        }
+    }
+
+    // 顶点只存在 Polygon 里：调用方的数组可以复用，快照之后撤销再添加也不影响快照
+    @Test
+    void verticesSurviveCallerReuseAndUndo() {
+        ShapeStore store = new ShapeStore();
+        int[] xs = {0, 10, 5, 99};
+        int[] ys = {0, 0, 8, 99};
+        int polygon = store.addPolygon(xs, ys, 3, true);
+        xs[0] = -1;
+        int stroke = store.addStroke(xs, ys, 4);
+        ShapeStore snapshot = store.snapshot();
+        store.removeLast();
+        store.addStroke(new int[]{7}, new int[]{7}, 1);
+
+        assertEquals(3, snapshot.vertexCount(polygon));
+        assertEquals(0, snapshot.vertexX(polygon, 0));
+        assertEquals(4, snapshot.vertexCount(stroke));
+        assertEquals(-1, snapshot.vertexX(stroke, 0));
+        assertEquals(99, snapshot.vertexY(stroke, 3));
+        assertEquals(1, store.vertexCount(stroke));
+        assertEquals(7, store.vertexX(stroke, 0));
+        assertEquals(0, store.vertexCount(store.add(ShapeStore.RECT, 0, 0, 1, 1, false)));
+    }
+
+    // 一个线程不停追加并取快照，另一个线程同时查询最新的快照
+    @Test
+    void snapshotsCanBeQueriedWhileTheStoreGrows() throws InterruptedException {
+        ShapeStore store = new ShapeStore();
+        AtomicReference<ShapeStore> latest = new AtomicReference<>(store.snapshot());
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread reader = new Thread(() -> {
+            Random random = new Random(4);
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    ShapeStore snapshot = latest.get();
+                    Rectangle area = new Rectangle(random.nextInt(WORLD), random.nextInt(WORLD), 2000, 2000);
+                    assertEquals(bruteForce(snapshot, area), matches(snapshot, area));
+                }
+            } catch (Throwable e) {
+                failure.set(e);
+            }
+        });
+        reader.start();
+        Random random = new Random(5);
+        for (int i = 0; i < 200; i++) {
+            addRandom(store, 100, random);
+            if (i % 7 == 6) store.truncate(store.size() - 30);
+            latest.set(store.snapshot());
+        }
+        reader.interrupt();
+        reader.join();
+        if (failure.get() != null) throw new AssertionError(failure.get());
+    }
+
+    private static ShapeStore randomStore(int shapes, Random random) {
+        ShapeStore store = new ShapeStore(shapes);
+        addRandom(store, shapes, random);
+        return store;
+    }
+
+    // 以小图形为主，夹杂跨越多层格子和超出最粗一层的大图形
+    private static void addRandom(ShapeStore store, int shapes, Random random) {
+        for (int i = 0; i < shapes; i++) {
+            int x = random.nextInt(WORLD), y = random.nextInt(WORLD);
+            int extent = i % 50 == 0 ? 5000 + random.nextInt(WORLD) : 1 + random.nextInt(200);
+            store.add((byte) (i % 3), x, y, x + random.nextInt(extent), y + random.nextInt(extent), i % 2 == 0);
+        }
+    }
+
+    private static List<Integer> matches(ShapeStore store, Rectangle area) {
+        IntList ids = new IntList();
+        store.query(area, ids);
+        List<Integer> result = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i++) {
+            if (store.intersects(ids.get(i), area)) result.add(ids.get(i));
+        }
+        return result;
+    }
+
+    private static List<Integer> bruteForce(ShapeStore store, Rectangle area) {
+        List<Integer> result = new ArrayList<>();
+        for (int id = 0; id < store.size(); id++) {
+            if (store.intersects(id, area)) result.add(id);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,267 @@
+package com.outprogram.ui;
+
+import static com.outprogram.ui.ShapeAssert.assertSameShape;
+import static com.outprogram.ui.ShapeAssert.assertSameShapes;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class VectorFormatTest {
+    @TempDir
+    File dir;
+
+    @Test
+    void roundTripsEveryShapeType() throws IOException {
+        ShapeStore store = new ShapeStore();
+        store.add(ShapeStore.LINE, 10, 20, 300, 5, false);
+        store.add(ShapeStore.RECT, 40, 50, 10, 12, true);
+        store.add(ShapeStore.RECT, 40, 50, 90, 92, false);
+        store.add(ShapeStore.OVAL, 0, 0, 64, 32, true);
+        store.add(ShapeStore.OVAL, 7, 7, 7, 7, false);
+        store.addPolygon(new int[]{0, 100, 50, -20}, new int[]{0, 0, 80, 40}, 4, true);
+        store.addPolygon(new int[]{5, 6, 7}, new int[]{5, 9, 5}, 3, false);
+        store.addStroke(new int[]{1, 2, 4, 8, 16}, new int[]{1, -1, 1, -1, 1}, 5);
+        store.addStroke(new int[]{42}, new int[]{24}, 1);
+
+        assertSameShapes(store, writeAndRead(store));
+    }
+
+    // 相邻图形的差分会越过 int 的两端
+    @Test
+    void roundTripsNegativeAndLargeCoordinates() throws IOException {
+        ShapeStore store = new ShapeStore();
+        store.add(ShapeStore.RECT, Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE + 10, Integer.MIN_VALUE + 3, true);
+        store.add(ShapeStore.LINE, Integer.MAX_VALUE - 10, Integer.MAX_VALUE - 10, Integer.MAX_VALUE, Integer.MAX_VALUE, false);
+        store.add(ShapeStore.OVAL, -1_000_000_000, 1_000_000_000, -999_999_000, 1_000_000_500, true);
+        store.addPolygon(new int[]{-5, Integer.MAX_VALUE - 1, 0}, new int[]{Integer.MIN_VALUE + 1, 0, -7}, 3, true);
+        store.addStroke(new int[]{-3, Integer.MAX_VALUE, Integer.MIN_VALUE}, new int[]{0, -1, 1}, 3);
+        store.add(ShapeStore.LINE, -1, -1, -1, -1, false);
+
+        assertSameShapes(store, writeAndRead(store));
+    }
+
+    @Test
+    void roundTripsEmptyDocument() throws IOException {
+        File file = write(new ShapeStore());
+        assertEquals(0, VectorFormat.read(file).size());
+        MappedDocument mapped = MappedDocument.open(file);
+        assertEquals(0, mapped.size());
+        assertEquals(0, mapped.blockCount());
+    }
+
+    // 按块映射解码与整体流式读取结果一致，块边界两侧的差分基准都正确
+    @Test
+    void blocksMatchStreamingRead() throws IOException {
+        for (int shapes : new int[]{VectorFormat.BLOCK_SIZE - 1, VectorFormat.BLOCK_SIZE,
+                VectorFormat.BLOCK_SIZE + 1, 2 * VectorFormat.BLOCK_SIZE + 17}) {
+            ShapeStore store = randomStore(shapes, new Random(shapes));
+            File file = write(store);
+            assertSameShapes(store, VectorFormat.read(file));
+
+            MappedDocument mapped = MappedDocument.open(file);
+            assertEquals(shapes, mapped.size());
+            assertEquals((shapes + VectorFormat.BLOCK_SIZE - 1) / VectorFormat.BLOCK_SIZE, mapped.blockCount());
+            int id = 0;
+            for (int b = 0; b < mapped.blockCount(); b++) {
+                ShapeStore block = mapped.block(b);
+                assertSameShapes(block, mapped.readBlock(b));
+                for (int i = 0; i < block.size(); i++) {
+                    assertSameShape(store, id++, block, i);
+                }
+            }
+            assertEquals(shapes, id);
+            assertEquals(store.getBounds(), mapped.getBounds());
+        }
+    }
+
+    // 版本 1 没有分块和块索引，差分基准贯穿整个文件
+    @Test
+    void readsVersion1() throws IOException {
+        ShapeStore store = randomStore(VectorFormat.BLOCK_SIZE + 100, new Random(1));
+        File file = new File(dir, "v1" + VectorFormat.EXTENSION);
+        Files.write(file.toPath(), encodeVersion1(store));
+
+        assertSameShapes(store, VectorFormat.read(file));
+        assertNull(MappedDocument.open(file));
+    }
+
+    @Test
+    void rejectsTruncatedFiles() throws IOException {
+        ShapeStore store = randomStore(40, new Random(3));
+        byte[] whole = Files.readAllBytes(write(store).toPath());
+        File cut = new File(dir, "cut" + VectorFormat.EXTENSION);
+        for (int length = 0; length < whole.length; length++) {
+            Files.write(cut.toPath(), Arrays.copyOf(whole, length));
+            assertThrows(IOException.class, () -> VectorFormat.read(cut), "read, length " + length);
+            assertThrows(IOException.class, () -> {
+                MappedDocument mapped = MappedDocument.open(cut);
+                if (mapped == null) throw new IOException("not mappable");
+                for (int b = 0; b < mapped.blockCount(); b++) {
+                    mapped.readBlock(b);
+                }
+            }, "mapped, length " + length);
+        }
+    }
+
+    @Test
+    void rejectsCorruptFiles() throws IOException {
+        ShapeStore store = new ShapeStore();
+        store.add(ShapeStore.RECT, 1, 2, 3, 4, true);
+        byte[] whole = Files.readAllBytes(write(store).toPath());
+
+        assertRejected(patch(whole, 0, 'X'), "Not a drawing document");
+        assertRejected(patch(whole, 4, 3), "Unsupported document version 3");
+        assertRejected(patch(whole, 4, 0), "Unsupported document version 0");
+        // 标记字节中的类型 5 不存在
+        assertRejected(patch(whole, 5, 5), "unknown shape type");
+        // 图形总数与实际不符：结束标记后的 4 字节
+        int end = 5 + 1 + 4;
+        assertEquals((byte) 0xFF, whole[end]);
+        assertRejected(patch(whole, end + 4, 2), "expected 2 shapes");
+
+        // 顶点数为 0，以及大得离谱的顶点数不会先去分配数组
+        assertRejected(document(ShapeStore.POLYGON, 0x00), "Corrupt vertex count 0");
+        assertRejected(document(ShapeStore.POLYGON, 0xFF, 0xFF, 0xFF, 0xFF, 0x07), "Corrupt vertex count");
+        assertRejected(document(ShapeStore.STROKE, 0x80, 0x80, 0x80, 0x80, 0x80, 0x01), "malformed varint");
+    }
+
+    @Test
+    void rejectsCorruptBlockIndex() throws IOException {
+        ShapeStore store = randomStore(10, new Random(4));
+        byte[] whole = Files.readAllBytes(write(store).toPath());
+        // 第一块的偏移指向索引之后
+        int entry = whole.length - VectorFormat.TAIL_SIZE - VectorFormat.INDEX_ENTRY_SIZE;
+        byte[] bad = whole.clone();
+        ByteBuffer.wrap(bad).putLong(entry, whole.length);
+        File file = new File(dir, "index" + VectorFormat.EXTENSION);
+        Files.write(file.toPath(), bad);
+        IOException e = assertThrows(IOException.class, () -> MappedDocument.open(file));
+        assertTrue(e.getMessage().contains("bad block index"), e.getMessage());
+    }
+
+    private ShapeStore writeAndRead(ShapeStore store) throws IOException {
+        File file = write(store);
+        MappedDocument mapped = MappedDocument.open(file);
+        assertSameShapes(store, mapped.readBlock(0));
+        return VectorFormat.read(file);
+    }
+
+    private File write(ShapeStore store) throws IOException {
+        File file = new File(dir, "doc" + VectorFormat.EXTENSION);
+        VectorFormat.write(store, file);
+        return file;
+    }
+
+    private void assertRejected(byte[] data, String message) throws IOException {
+        File file = new File(dir, "bad" + VectorFormat.EXTENSION);
+        Files.write(file.toPath(), data);
+        IOException e = assertThrows(IOException.class, () -> VectorFormat.read(file));
+        assertTrue(e.getMessage().contains(message), e.getMessage());
+    }
+
+    private static byte[] patch(byte[] data, int offset, int value) {
+        byte[] copy = data.clone();
+        copy[offset] = (byte) value;
+        return copy;
+    }
+
+    // 版本 1 文件头加一个图形的开头几个字节，后面接结束标记和总数 1
+    private static byte[] document(byte type, int... body) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(VectorFormat.MAGIC, 0, VectorFormat.MAGIC.length);
+        out.write(1);
+        out.write(type);
+        for (int b : body) {
+            out.write(b);
+        }
+        out.write(0xFF);
+        out.write(new byte[]{0, 0, 0, 1}, 0, 4);
+        return out.toByteArray();
+    }
+
+    // 按版本 1 的布局手工编码
+    private static byte[] encodeVersion1(ShapeStore store) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(VectorFormat.MAGIC, 0, VectorFormat.MAGIC.length);
+        out.write(1);
+        int prevX = 0, prevY = 0;
+        for (int id = 0; id < store.size(); id++) {
+            byte type = store.type(id);
+            out.write(type | (store.isFilled(id) ? 0x08 : 0));
+            if (ShapeStore.hasVertices(type)) {
+                int n = store.vertexCount(id);
+                putVarint(out, n);
+                int px = prevX, py = prevY;
+                for (int i = 0; i < n; i++) {
+                    putSigned(out, store.vertexX(id, i) - px);
+                    putSigned(out, store.vertexY(id, i) - py);
+                    px = store.vertexX(id, i);
+                    py = store.vertexY(id, i);
+                }
+                prevX = store.vertexX(id, 0);
+                prevY = store.vertexY(id, 0);
+            } else {
+                putSigned(out, store.x1(id) - prevX);
+                putSigned(out, store.y1(id) - prevY);
+                putSigned(out, store.x2(id) - store.x1(id));
+                putSigned(out, store.y2(id) - store.y1(id));
+                prevX = store.x1(id);
+                prevY = store.y1(id);
+            }
+        }
+        out.write(0xFF);
+        byte[] count = ByteBuffer.allocate(4).putInt(store.size()).array();
+        out.write(count, 0, 4);
+        return out.toByteArray();
+    }
+
+    private static void putSigned(ByteArrayOutputStream out, int value) {
+        putVarint(out, (value << 1) ^ (value >> 31));
+    }
+
+    private static void putVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    // 五种类型轮流出现，实心随机，坐标有正有负
+    static ShapeStore randomStore(int shapes, Random random) {
+        ShapeStore store = new ShapeStore(shapes);
+        int[] xs = new int[12];
+        int[] ys = new int[12];
+        for (int i = 0; i < shapes; i++) {
+            int x = random.nextInt(20_000) - 10_000;
+            int y = random.nextInt(20_000) - 10_000;
+            byte type = (byte) (i % 5);
+            if (type == ShapeStore.POLYGON || type == ShapeStore.STROKE) {
+                int n = (type == ShapeStore.POLYGON ? 3 : 1) + random.nextInt(9);
+                for (int k = 0; k < n; k++) {
+                    xs[k] = x + random.nextInt(200) - 100;
+                    ys[k] = y + random.nextInt(200) - 100;
+                }
+                if (type == ShapeStore.POLYGON) {
+                    store.addPolygon(xs, ys, n, random.nextBoolean());
+                } else {
+                    store.addStroke(xs, ys, n);
+                }
+            } else {
+                store.add(type, x, y, x + random.nextInt(300) - 150, y + random.nextInt(300) - 150, random.nextBoolean());
+            }
+        }
+        return store;
+    }
+}